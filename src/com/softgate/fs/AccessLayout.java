@@ -0,0 +1,173 @@
+package com.softgate.fs;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the order files are written to a block archive in. Files are grouped into clusters that are written
+ * contiguously and compressed together, and clusters are written in the order they were added.
+ * 
+ * <p>Files are addressed by the position of their {@link Index} and their slot within it, packed into a single long
+ * key by {@link #key(int, int)}.</p>
+ * 
+ * @author Chad Adams
+ */
+public final class AccessLayout {
+
+	/**
+	 * The clusters of this layout, in the order they are written.
+	 */
+	private final List<long[]> clusters = new ArrayList<>();
+
+	/**
+	 * The private constructor.
+	 */
+	private AccessLayout() {
+
+	}
+
+	/**
+	 * The method to create an empty {@link AccessLayout}.
+	 * 
+	 * @return The created layout.
+	 */
+	public static AccessLayout create() {
+		return new AccessLayout();
+	}
+
+	/**
+	 * The method to create an {@link AccessLayout} that keeps the files of a file system in {@link Index} order, then
+	 * file order. A cluster never spans two indexes and holds at most {@code clusterSize} bytes, unless a single file
+	 * is larger than that.
+	 * 
+	 * @param fs
+	 * 		The file system to lay out.
+	 * 
+	 * @param clusterSize
+	 * 		The target amount of payload bytes per cluster.
+	 * 
+	 * @return The created layout.
+	 */
+	public static AccessLayout natural(IndexedFileSystem fs, int clusterSize) {
+		return natural(fs.getIndexes(), clusterSize);
+	}
+
+	/**
+	 * The method that creates a layout that packs consecutive files of each index of a list into clusters.
+	 * 
+	 * @param indexes
+	 * 		The indexes to lay out, keyed by their position in the list.
+	 * 
+	 * @param clusterSize
+	 * 		The target amount of payload bytes per cluster.
+	 * 
+	 * @return The created layout.
+	 */
+	static AccessLayout natural(List<Index> indexes, int clusterSize) {
+		AccessLayout layout = new AccessLayout();
+
+		for (int index = 0; index < indexes.size(); index++) {
+
+			List<IndexedFile> files = indexes.get(index).getFiles();
+
+			List<Long> cluster = new ArrayList<>();
+
+			long size = 0;
+
+			for (int file = 0; file < files.size(); file++) {
+
+				long length = files.get(file).getLength();
+
+				if (!cluster.isEmpty() && size + length > clusterSize) {
+					layout.add(cluster);
+					cluster.clear();
+					size = 0;
+				}
+
+				cluster.add(key(index, file));
+
+				size += length;
+			}
+
+			layout.add(cluster);
+		}
+
+		return layout;
+	}
+
+	/**
+	 * The method that appends a cluster of files to this layout.
+	 * 
+	 * @param cluster
+	 * 		The keys of the files in the cluster.
+	 * 
+	 * @return This layout.
+	 */
+	public AccessLayout add(long... cluster) {
+		if (cluster.length > 0) {
+			clusters.add(cluster.clone());
+		}
+		return this;
+	}
+
+	/**
+	 * The method that appends a cluster of files to this layout.
+	 * 
+	 * @param cluster
+	 * 		The keys of the files in the cluster.
+	 * 
+	 * @return This layout.
+	 */
+	public AccessLayout add(List<Long> cluster) {
+		return add(cluster.stream().mapToLong(Long::longValue).toArray());
+	}
+
+	/**
+	 * Gets the clusters of this layout, in the order they are written.
+	 * 
+	 * @return The clusters.
+	 */
+	public List<long[]> getClusters() {
+		return Collections.unmodifiableList(clusters);
+	}
+
+	/**
+	 * The method that packs the position of a file into a key.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @param file
+	 * 		The slot of the file within the index.
+	 * 
+	 * @return The key.
+	 */
+	public static long key(int index, int file) {
+		return ((long) index << 32) | (file & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Gets the position of the index from a key.
+	 * 
+	 * @param key
+	 * 		The key.
+	 * 
+	 * @return The position of the index.
+	 */
+	public static int index(long key) {
+		return (int) (key >>> 32);
+	}
+
+	/**
+	 * Gets the slot of the file from a key.
+	 * 
+	 * @param key
+	 * 		The key.
+	 * 
+	 * @return The slot of the file.
+	 */
+	public static int file(long key) {
+		return (int) key;
+	}
+
+}
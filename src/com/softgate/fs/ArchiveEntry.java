@@ -0,0 +1,140 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * Represents a file visited by an {@link ArchiveReader}. The payload is streamed straight from the archive, so an
+ * entry is only readable until the reader moves on to the next entry.
+ * 
+ * @author Chad Adams
+ */
+public final class ArchiveEntry {
+
+	/**
+	 * The position of the index this file belongs to.
+	 */
+	private final int index;
+
+	/**
+	 * The id of the index this file belongs to.
+	 */
+	private final int indexId;
+
+	/**
+	 * The name of the index this file belongs to.
+	 */
+	private final String indexName;
+
+	/**
+	 * The id of this file.
+	 */
+	private final int id;
+
+	/**
+	 * The name of this file.
+	 */
+	private final String name;
+
+	/**
+	 * The length of the payload.
+	 */
+	private final long length;
+
+	/**
+	 * The stream of the payload.
+	 */
+	private final InputStream payload;
+
+	/**
+	 * Creates a new {@link ArchiveEntry}.
+	 * 
+	 * @param index
+	 * 		The position of the index this file belongs to.
+	 * 
+	 * @param indexId
+	 * 		The id of the index this file belongs to.
+	 * 
+	 * @param indexName
+	 * 		The name of the index this file belongs to.
+	 * 
+	 * @param id
+	 * 		The id of this file.
+	 * 
+	 * @param name
+	 * 		The name of this file.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @param payload
+	 * 		The stream of the payload.
+	 */
+	ArchiveEntry(int index, int indexId, String indexName, int id, String name, long length, InputStream payload) {
+		this.index = index;
+		this.indexId = indexId;
+		this.indexName = indexName;
+		this.id = id;
+		this.name = name;
+		this.length = length;
+		this.payload = payload;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public int getIndexId() {
+		return indexId;
+	}
+
+	public String getIndexName() {
+		return indexName;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the stream of the payload. Closing the stream is not required.
+	 * 
+	 * @return The payload stream.
+	 */
+	public InputStream getInputStream() {
+		return payload;
+	}
+
+	/**
+	 * The method that reads the whole payload into memory.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the payload cannot be read or does not fit in an array.
+	 * 
+	 * @return The payload.
+	 */
+	public byte[] getPayload() throws IOException {
+
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IOException(String.format("file=[%d, %s] is too large to read into memory: %d", id, name, length));
+		}
+
+		byte[] data = new byte[(int) length];
+
+		if (IOUtils.readFully(payload, data) != data.length) {
+			throw new IOException(String.format("file=[%d, %s] is truncated.", id, name));
+		}
+
+		return data;
+	}
+
+}
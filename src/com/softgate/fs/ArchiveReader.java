@@ -0,0 +1,107 @@
+package com.softgate.fs;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks every file of an encoded {@link IndexedFileSystem} in a single pass without decoding it into memory. Payloads
+ * are streamed from the archive as they are visited, so the memory used does not depend on the size of the archive.
+ * 
+ * <p>An entry is only readable until {@link #hasNext()} or {@link #next()} is called again.</p>
+ * 
+ * @author Chad Adams
+ */
+public abstract class ArchiveReader implements Iterator<ArchiveEntry>, Closeable {
+
+	/**
+	 * The entry that will be returned by the next call to {@link #next()}, or {@code null} if it has not been read.
+	 */
+	private ArchiveEntry next;
+
+	/**
+	 * The method that opens a reader over an encoded archive.
+	 * 
+	 * @param path
+	 * 		The path of the archive.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be opened.
+	 * 
+	 * @return The reader.
+	 */
+	public static ArchiveReader open(String path) throws IOException {
+		Path file = Paths.get(path);
+
+		if (BlockArchive.isBlockArchive(file)) {
+			return new BlockArchiveReader(file);
+		}
+
+		if (ShardedArchive.isDescriptor(file)) {
+			return new ShardedArchiveReader(file);
+		}
+
+		return new StreamArchiveReader(file);
+	}
+
+	/**
+	 * The method that reads the next entry from the archive, skipping whatever is left of the previous entry.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be read.
+	 * 
+	 * @return The next entry, or {@code null} if every entry has been read.
+	 */
+	protected abstract ArchiveEntry readNext() throws IOException;
+
+	@Override
+	public boolean hasNext() {
+
+		if (next == null) {
+			try {
+				next = readNext();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		return next != null;
+	}
+
+	@Override
+	public ArchiveEntry next() {
+
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		ArchiveEntry entry = next;
+
+		next = null;
+
+		return entry;
+	}
+
+	/**
+	 * The method that exposes the remaining entries as a sequential stream, which closes this reader when it is closed.
+	 * 
+	 * @return The stream of entries.
+	 */
+	public Stream<ArchiveEntry> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+			try {
+				close();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+	}
+
+}
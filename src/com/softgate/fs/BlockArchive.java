@@ -0,0 +1,934 @@
+package com.softgate.fs;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads and writes the block archive format. Unlike the single compressed stream written by
+ * {@link IndexedFileSystem#encode()}, a block archive compresses its payloads in independent blocks and ends with a
+ * table of contents, so a file system can be opened without decompressing anything and a read only has to inflate
+ * the blocks that hold the file. Payloads are streamed into blocks of at most {@link #MAX_BLOCK_SIZE} bytes, so a file
+ * larger than the heap spans several blocks.
+ * 
+ * <pre>
+ * int magic, byte version
+ * block[] compressed payloads, laid out by an {@link AccessLayout}
+ * int blocks, per block: byte codec, long position, int compressed length, long start, int length
+ * int indexes, per index: byte id, UTF name, int files, per file: int id, UTF name, long offset, long length
+ * long table of contents position, int magic
+ * </pre>
+ * 
+ * @author Chad Adams
+ */
+final class BlockArchive {
+
+	/**
+	 * The value every block archive starts and ends with, "IBFS" in ASCII.
+	 */
+	static final int MAGIC = 0x49424653;
+
+	/**
+	 * The version of the format written and read by this class.
+	 */
+	static final int VERSION = 2;
+
+	/**
+	 * The highest amount of decompressed bytes a block is filled with before a new block is started.
+	 */
+	static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * The size of the buffer payloads are streamed through.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The default amount of decompressed bytes an opened archive caches.
+	 */
+	static final long DEFAULT_CACHE_SIZE = 32 * 1024 * 1024;
+
+	/**
+	 * The size of the header at the start of an archive.
+	 */
+	private static final int HEADER_SIZE = 5;
+
+	/**
+	 * The size of the trailer at the end of an archive.
+	 */
+	private static final int TRAILER_SIZE = 12;
+
+	/**
+	 * The private constructor to prevent instantiation.
+	 */
+	private BlockArchive() {
+
+	}
+
+	/**
+	 * The method that checks whether a file is a block archive.
+	 * 
+	 * @param path
+	 * 		The path of the file.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the file cannot be read.
+	 * 
+	 * @return {@code true} if the file starts with the block archive magic.
+	 */
+	static boolean isBlockArchive(Path path) throws IOException {
+		return startsWith(path, MAGIC);
+	}
+
+	/**
+	 * The method that checks whether a file starts with a magic value.
+	 * 
+	 * @param path
+	 * 		The path of the file.
+	 * 
+	 * @param magic
+	 * 		The magic value.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the file cannot be read.
+	 * 
+	 * @return {@code true} if the file starts with the magic value.
+	 */
+	static boolean startsWith(Path path, int magic) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(4);
+
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// keep reading until the magic is complete or the file ends
+			}
+
+			return !buffer.hasRemaining() && buffer.getInt(0) == magic;
+		}
+	}
+
+	/**
+	 * The method that opens a block archive. Only the table of contents is read, payloads are inflated when they are
+	 * first read.
+	 * 
+	 * @param path
+	 * 		The path of the archive.
+	 * 
+	 * @param overflow
+	 * 		The store that will hold payloads written after the archive was opened.
+	 * 
+	 * @param listener
+	 * 		The listener to notify, or {@code null} to disable instrumentation.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be read or is malformed.
+	 * 
+	 * @return The opened file system.
+	 */
+	static IndexedFileSystem open(Path path, PayloadStore overflow, FileSystemListener listener) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			TableOfContents toc = TableOfContents.read(channel, path);
+
+			BlockPayloadStore store = new BlockPayloadStore(channel, toc.starts, toc.lengths, toc.positions, toc.compressedLengths, toc.codecs, overflow, DEFAULT_CACHE_SIZE);
+
+			IndexedFileSystem fs = IndexedFileSystem.create(store);
+
+			fs.setListener(listener);
+
+			for (int index = 0; index < toc.indexIds.length; index++) {
+				fs.add(createIndex(toc, index, store));
+			}
+
+			return fs;
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * The method that creates an {@link Index} from its entry in a table of contents, reading its payloads from the
+	 * store of the archive.
+	 * 
+	 * @param toc
+	 * 		The table of contents of the archive.
+	 * 
+	 * @param index
+	 * 		The position of the index in the archive.
+	 * 
+	 * @param store
+	 * 		The store of the archive.
+	 * 
+	 * @return The created index.
+	 */
+	static Index createIndex(TableOfContents toc, int index, PayloadStore store) {
+		Index idx = Index.create(toc.indexIds[index], toc.indexNames[index], store);
+
+		PackedFileList list = (PackedFileList) idx.getFiles();
+
+		for (int file = 0; file < toc.fileIds[index].length; file++) {
+			list.append(toc.fileIds[index][file], toc.fileNames[index][file], toc.offsets[index][file], toc.fileLengths[index][file]);
+		}
+
+		return idx;
+	}
+
+	/**
+	 * Represents the table of contents of a block archive.
+	 */
+	static final class TableOfContents {
+
+		/**
+		 * The codec of each block.
+		 */
+		BlockCodec[] codecs;
+
+		/**
+		 * The position of each compressed block in the archive.
+		 */
+		long[] positions;
+
+		/**
+		 * The compressed length of each block.
+		 */
+		int[] compressedLengths;
+
+		/**
+		 * The decompressed offset of each block.
+		 */
+		long[] starts;
+
+		/**
+		 * The decompressed length of each block.
+		 */
+		int[] lengths;
+
+		/**
+		 * The id of each index.
+		 */
+		int[] indexIds;
+
+		/**
+		 * The name of each index.
+		 */
+		String[] indexNames;
+
+		/**
+		 * The ids of the files of each index.
+		 */
+		int[][] fileIds;
+
+		/**
+		 * The names of the files of each index.
+		 */
+		String[][] fileNames;
+
+		/**
+		 * The decompressed offsets of the files of each index.
+		 */
+		long[][] offsets;
+
+		/**
+		 * The lengths of the files of each index.
+		 */
+		long[][] fileLengths;
+
+		/**
+		 * The method that reads the table of contents of a block archive.
+		 * 
+		 * @param channel
+		 * 		The channel of the archive.
+		 * 
+		 * @param path
+		 * 		The path of the archive.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the archive cannot be read or is malformed.
+		 * 
+		 * @return The table of contents.
+		 */
+		static TableOfContents read(FileChannel channel, Path path) throws IOException {
+			ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+
+			if (header.getInt() != MAGIC) {
+				throw new IOException(String.format("%s is not a block archive.", path));
+			}
+
+			int version = header.get();
+
+			if (version != VERSION) {
+				throw new IOException(String.format("version=%d is not supported.", version));
+			}
+
+			ByteBuffer trailer = readFully(channel, channel.size() - TRAILER_SIZE, TRAILER_SIZE);
+
+			long toc = trailer.getLong();
+
+			if (trailer.getInt() != MAGIC) {
+				throw new IOException(String.format("%s is truncated.", path));
+			}
+
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(new ChannelInputStream(channel, toc, channel.size() - TRAILER_SIZE - toc)));
+
+			TableOfContents contents = new TableOfContents();
+
+			int blocks = dis.readInt();
+
+			contents.codecs = new BlockCodec[blocks];
+			contents.positions = new long[blocks];
+			contents.compressedLengths = new int[blocks];
+			contents.starts = new long[blocks];
+			contents.lengths = new int[blocks];
+
+			for (int block = 0; block < blocks; block++) {
+				contents.codecs[block] = BlockCodec.valueOf(dis.readUnsignedByte());
+				contents.positions[block] = dis.readLong();
+				contents.compressedLengths[block] = dis.readInt();
+				contents.starts[block] = dis.readLong();
+				contents.lengths[block] = dis.readInt();
+			}
+
+			int indexes = dis.readInt();
+
+			contents.indexIds = new int[indexes];
+			contents.indexNames = new String[indexes];
+			contents.fileIds = new int[indexes][];
+			contents.fileNames = new String[indexes][];
+			contents.offsets = new long[indexes][];
+			contents.fileLengths = new long[indexes][];
+
+			for (int index = 0; index < indexes; index++) {
+
+				contents.indexIds[index] = dis.readUnsignedByte();
+
+				contents.indexNames[index] = dis.readUTF();
+
+				int files = dis.readInt();
+
+				contents.fileIds[index] = new int[files];
+				contents.fileNames[index] = new String[files];
+				contents.offsets[index] = new long[files];
+				contents.fileLengths[index] = new long[files];
+
+				for (int file = 0; file < files; file++) {
+					contents.fileIds[index][file] = dis.readInt();
+					contents.fileNames[index][file] = dis.readUTF();
+					contents.offsets[index][file] = dis.readLong();
+					contents.fileLengths[index][file] = dis.readLong();
+				}
+			}
+
+			return contents;
+		}
+
+		/**
+		 * The method that writes the index part of this table of contents, the part that follows the block table.
+		 * 
+		 * @param out
+		 * 		The stream of the archive.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the table cannot be written.
+		 */
+		void writeIndexes(DataOutputStream out) throws IOException {
+			out.writeInt(indexIds.length);
+
+			for (int index = 0; index < indexIds.length; index++) {
+
+				out.writeByte(indexIds[index]);
+				out.writeUTF(indexNames[index]);
+				out.writeInt(fileIds[index].length);
+
+				for (int file = 0; file < fileIds[index].length; file++) {
+					out.writeInt(fileIds[index][file]);
+					out.writeUTF(fileNames[index][file]);
+					out.writeLong(offsets[index][file]);
+					out.writeLong(fileLengths[index][file]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The method that writes a file system as a block archive. Every cluster of the layout is compressed as its own
+	 * block, split further whenever it grows past {@link #MAX_BLOCK_SIZE}, and files that the layout does not mention
+	 * are appended in index order. Payloads are streamed, so no file has to fit in memory.
+	 * 
+	 * @param fs
+	 * 		The file system to write.
+	 * 
+	 * @param file
+	 * 		The file to write to.
+	 * 
+	 * @param layout
+	 * 		The order to write the files in.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the blocks with.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be written.
+	 */
+	static void write(IndexedFileSystem fs, File file, AccessLayout layout, BlockCodec codec) throws IOException {
+		write(fs.getIndexes(), file, layout, codec);
+	}
+
+	/**
+	 * The method that writes a list of indexes as a block archive.
+	 * 
+	 * @param indexes
+	 * 		The indexes to write.
+	 * 
+	 * @param file
+	 * 		The file to write to.
+	 * 
+	 * @param layout
+	 * 		The order to write the files in, keyed by the position of each index in the list.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the blocks with.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be written.
+	 */
+	static void write(List<Index> indexes, File file, AccessLayout layout, BlockCodec codec) throws IOException {
+		long[][] offsets = new long[indexes.size()][];
+
+		long[][] lengths = new long[indexes.size()][];
+
+		for (int index = 0; index < offsets.length; index++) {
+			offsets[index] = new long[indexes.get(index).getFiles().size()];
+			lengths[index] = new long[offsets[index].length];
+			Arrays.fill(offsets[index], -1);
+		}
+
+		List<long[]> clusters = new ArrayList<>(layout.getClusters());
+
+		for (int index = 0; index < offsets.length; index++) {
+			clusters.add(remaining(index, offsets[index].length));
+		}
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+
+			BlockWriter writer = new BlockWriter(out, codec);
+
+			byte[] buffer = new byte[BUFFER_SIZE];
+
+			for (long[] cluster : clusters) {
+
+				for (long key : cluster) {
+
+					int index = AccessLayout.index(key);
+					int slot = AccessLayout.file(key);
+
+					if (index < 0 || index >= offsets.length || slot < 0 || slot >= offsets[index].length || offsets[index][slot] != -1) {
+						continue;
+					}
+
+					offsets[index][slot] = writer.offset();
+
+					IndexedFile indexedFile = indexes.get(index).getFiles().get(slot);
+
+					try(InputStream in = indexedFile.getInputStream()) {
+						int read;
+
+						while ((read = in.read(buffer)) != -1) {
+							writer.write(buffer, read);
+							lengths[index][slot] += read;
+						}
+					}
+
+					if (lengths[index][slot] != indexedFile.getLength()) {
+						throw new IOException(String.format("file=[%d, %s] streamed %d bytes instead of its length of %d.", indexedFile.getHeader().getId(), indexedFile.getHeader().getName(), lengths[index][slot], indexedFile.getLength()));
+					}
+				}
+
+				writer.flush();
+			}
+
+			writer.finish();
+
+			out.writeInt(indexes.size());
+
+			for (int index = 0; index < offsets.length; index++) {
+
+				Index idx = indexes.get(index);
+
+				List<IndexedFile> files = idx.getFiles();
+
+				out.writeByte(idx.getId());
+				out.writeUTF(idx.getName());
+				out.writeInt(files.size());
+
+				for (int slot = 0; slot < files.size(); slot++) {
+
+					IndexedFile indexedFile = files.get(slot);
+
+					out.writeInt(indexedFile.getHeader().getId());
+					out.writeUTF(indexedFile.getHeader().getName());
+					out.writeLong(offsets[index][slot]);
+					out.writeLong(lengths[index][slot]);
+				}
+
+			}
+
+			out.writeLong(writer.position());
+			out.writeInt(MAGIC);
+		}
+	}
+
+	/**
+	 * Represents the state of an archive while its blocks are being written. Blocks are compressed on the calling thread,
+	 * or on an executor when one is given, in which case a bounded amount of blocks is compressed ahead while the
+	 * finished ones are written in order.
+	 */
+	static final class BlockWriter {
+
+		/**
+		 * The stream of the archive.
+		 */
+		private final DataOutputStream out;
+
+		/**
+		 * The codec to compress blocks with.
+		 */
+		private final BlockCodec codec;
+
+		/**
+		 * The preset to compress blocks with.
+		 */
+		private final int preset;
+
+		/**
+		 * The executor blocks are compressed on, or {@code null} to compress them on the calling thread.
+		 */
+		private final ExecutorService executor;
+
+		/**
+		 * The highest amount of bytes that blocks waiting to be written may hold before the writer waits for them.
+		 */
+		private final long maxPending;
+
+		/**
+		 * The blocks that have been written, in order.
+		 */
+		private final List<Block> blocks = new ArrayList<>();
+
+		/**
+		 * The blocks that are being compressed, in order.
+		 */
+		private final ArrayDeque<Block> pending = new ArrayDeque<>();
+
+		/**
+		 * The decompressed bytes of the block being filled.
+		 */
+		private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+
+		/**
+		 * The amount of bytes the pending blocks hold.
+		 */
+		private long pendingBytes;
+
+		/**
+		 * The position of the next block in the archive.
+		 */
+		private long position = HEADER_SIZE;
+
+		/**
+		 * The decompressed offset of the block being filled.
+		 */
+		private long start;
+
+		BlockWriter(DataOutputStream out, BlockCodec codec) {
+			this(out, codec, BlockCodec.DEFAULT_PRESET, null, 0);
+		}
+
+		BlockWriter(DataOutputStream out, BlockCodec codec, int preset, ExecutorService executor, long maxPending) {
+			this.out = out;
+			this.codec = codec;
+			this.preset = preset;
+			this.executor = executor;
+			this.maxPending = maxPending;
+		}
+
+		/**
+		 * Gets the decompressed offset the next byte will be written at.
+		 * 
+		 * @return The offset.
+		 */
+		long offset() {
+			return start + block.size();
+		}
+
+		/**
+		 * Gets the amount of bytes in the block being filled.
+		 * 
+		 * @return The amount of bytes.
+		 */
+		int buffered() {
+			return block.size();
+		}
+
+		/**
+		 * Gets the position the next block will be written at, which is where the block table starts once the writer
+		 * has finished.
+		 * 
+		 * @return The position.
+		 */
+		long position() {
+			return position;
+		}
+
+		/**
+		 * Gets the blocks that have been written.
+		 * 
+		 * @return The blocks, in order.
+		 */
+		List<Block> getBlocks() {
+			return blocks;
+		}
+
+		/**
+		 * The method that appends payload bytes, starting a new block whenever the current one is full.
+		 * 
+		 * @param buffer
+		 * 		The buffer holding the bytes.
+		 * 
+		 * @param length
+		 * 		The amount of bytes to append.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if a block cannot be written.
+		 */
+		void write(byte[] buffer, int length) throws IOException {
+			int offset = 0;
+
+			while (offset < length) {
+				int chunk = Math.min(length - offset, MAX_BLOCK_SIZE - block.size());
+
+				block.write(buffer, offset, chunk);
+
+				offset += chunk;
+
+				if (block.size() >= MAX_BLOCK_SIZE) {
+					flush();
+				}
+			}
+		}
+
+		/**
+		 * The method that compresses and writes the block being filled, if it holds any bytes.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the block cannot be written.
+		 */
+		void flush() throws IOException {
+
+			if (block.size() == 0) {
+				return;
+			}
+
+			byte[] data = block.toByteArray();
+
+			block.reset();
+
+			submit(new Block(codec, start, data.length, false), data.length, () -> codec.compress(data, 0, data.length, preset));
+		}
+
+		/**
+		 * The method that writes a block that has already been compressed as is.
+		 * 
+		 * @param codec
+		 * 		The codec the block is compressed with.
+		 * 
+		 * @param compressed
+		 * 		The compressed block.
+		 * 
+		 * @param length
+		 * 		The decompressed length of the block.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the block cannot be written.
+		 */
+		void copy(BlockCodec codec, byte[] compressed, int length) throws IOException {
+			flush();
+			submit(new Block(codec, start, length, true), compressed.length, () -> compressed);
+		}
+
+		/**
+		 * The method that decompresses a block compressed with another codec or preset and writes it compressed with
+		 * the ones of this writer.
+		 * 
+		 * @param source
+		 * 		The codec the block is compressed with.
+		 * 
+		 * @param compressed
+		 * 		The compressed block.
+		 * 
+		 * @param length
+		 * 		The decompressed length of the block.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the block cannot be written.
+		 */
+		void transcode(BlockCodec source, byte[] compressed, int length) throws IOException {
+			flush();
+			submit(new Block(codec, start, length, false), (long) compressed.length + length, () -> codec.compress(source.decompress(compressed, length), 0, length, preset));
+		}
+
+		/**
+		 * The method that compresses a block, waiting for older blocks to be written first if too many are pending.
+		 * 
+		 * @param block
+		 * 		The block.
+		 * 
+		 * @param weight
+		 * 		The amount of bytes the block holds until it is written.
+		 * 
+		 * @param task
+		 * 		The task that produces the compressed block.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if a block cannot be compressed or written.
+		 */
+		private void submit(Block block, long weight, Callable<byte[]> task) throws IOException {
+			start += block.length;
+
+			Callable<byte[]> timed = () -> {
+				long begin = System.nanoTime();
+
+				byte[] compressed = task.call();
+
+				block.nanos = System.nanoTime() - begin;
+
+				return compressed;
+			};
+
+			if (executor == null) {
+				try {
+					write(block, timed.call());
+				} catch (IOException | RuntimeException ex) {
+					throw ex;
+				} catch (Exception ex) {
+					throw new IOException(ex);
+				}
+				return;
+			}
+
+			block.weight = weight;
+			block.result = executor.submit(timed);
+
+			pending.add(block);
+
+			pendingBytes += weight;
+
+			while (pendingBytes > maxPending && !pending.isEmpty()) {
+				drain();
+			}
+		}
+
+		/**
+		 * The method that waits for the oldest pending block and writes it.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the block could not be compressed or written.
+		 */
+		private void drain() throws IOException {
+			Block block = pending.poll();
+
+			pendingBytes -= block.weight;
+
+			try {
+				write(block, block.result.get());
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while compressing a block.");
+			} catch (ExecutionException ex) {
+				throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+			}
+		}
+
+		/**
+		 * The method that writes a compressed block to the archive.
+		 * 
+		 * @param block
+		 * 		The block.
+		 * 
+		 * @param compressed
+		 * 		The compressed bytes of the block.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the block cannot be written.
+		 */
+		private void write(Block block, byte[] compressed) throws IOException {
+			out.write(compressed);
+
+			block.position = position;
+			block.compressedLength = compressed.length;
+			block.result = null;
+
+			position += compressed.length;
+
+			blocks.add(block);
+		}
+
+		/**
+		 * The method that writes the last block followed by the block table.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the table cannot be written.
+		 */
+		void finish() throws IOException {
+			flush();
+
+			while (!pending.isEmpty()) {
+				drain();
+			}
+
+			out.writeInt(blocks.size());
+
+			for (Block block : blocks) {
+				out.writeByte(block.codec.getId());
+				out.writeLong(block.position);
+				out.writeInt(block.compressedLength);
+				out.writeLong(block.start);
+				out.writeInt(block.length);
+			}
+		}
+
+	}
+
+	/**
+	 * Represents a block written by a {@link BlockWriter}.
+	 */
+	static final class Block {
+
+		/**
+		 * The codec the block is compressed with.
+		 */
+		final BlockCodec codec;
+
+		/**
+		 * The decompressed offset of the block.
+		 */
+		final long start;
+
+		/**
+		 * The decompressed length of the block.
+		 */
+		final int length;
+
+		/**
+		 * Whether the block was copied without being recompressed.
+		 */
+		final boolean copied;
+
+		/**
+		 * The position of the block in the archive.
+		 */
+		long position;
+
+		/**
+		 * The compressed length of the block.
+		 */
+		int compressedLength;
+
+		/**
+		 * The time it took to compress the block, in nanoseconds.
+		 */
+		long nanos;
+
+		/**
+		 * The amount of bytes the block holds until it is written.
+		 */
+		private long weight;
+
+		/**
+		 * The compressed bytes of the block, until it is written.
+		 */
+		private Future<byte[]> result;
+
+		Block(BlockCodec codec, long start, int length, boolean copied) {
+			this.codec = codec;
+			this.start = start;
+			this.length = length;
+			this.copied = copied;
+		}
+
+	}
+
+	/**
+	 * The method that creates a cluster of every file in an index, used to catch files a layout does not mention.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @param files
+	 * 		The amount of files in the index.
+	 * 
+	 * @return The cluster.
+	 */
+	private static long[] remaining(int index, int files) {
+		long[] cluster = new long[files];
+
+		for (int file = 0; file < files; file++) {
+			cluster[file] = AccessLayout.key(index, file);
+		}
+
+		return cluster;
+	}
+
+	/**
+	 * The method that reads an exact range of a channel.
+	 * 
+	 * @param channel
+	 * 		The channel to read from.
+	 * 
+	 * @param position
+	 * 		The position to start reading at.
+	 * 
+	 * @param length
+	 * 		The amount of bytes to read.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the channel ends before the range does.
+	 * 
+	 * @return The buffer holding the range, flipped for reading.
+	 */
+	static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while (buffer.hasRemaining()) {
+			if (position < 0 || channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("unexpected end of archive.");
+			}
+		}
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+}
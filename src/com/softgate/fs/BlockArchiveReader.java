@@ -0,0 +1,188 @@
+package com.softgate.fs;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.commons.compress.utils.BoundedInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * An {@link ArchiveReader} over a block archive. Files are visited in the order they are stored in rather than in
+ * index order, so every block is decompressed once, as a stream, without ever being held in memory. Files that span
+ * several blocks are read straight through.
+ * 
+ * @author Chad Adams
+ */
+final class BlockArchiveReader extends ArchiveReader {
+
+	/**
+	 * The channel of the archive.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The table of contents of the archive.
+	 */
+	private final BlockArchive.TableOfContents toc;
+
+	/**
+	 * The keys of every file, sorted by the order they are stored in.
+	 */
+	private final long[] order;
+
+	/**
+	 * The position in {@link #order} of the next file to read.
+	 */
+	private int cursor;
+
+	/**
+	 * The decompressed stream of the blocks, or {@code null} if no block is being decompressed.
+	 */
+	private InputStream in;
+
+	/**
+	 * The decompressed offset the current block stream is at.
+	 */
+	private long position;
+
+	/**
+	 * The payload of the entry that was read last, or {@code null} if no entry has been read.
+	 */
+	private InputStream payload;
+
+	/**
+	 * Creates a new {@link BlockArchiveReader}.
+	 * 
+	 * @param path
+	 * 		The path of the archive.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be opened.
+	 */
+	BlockArchiveReader(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			this.toc = BlockArchive.TableOfContents.read(channel, path);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+
+		int count = 0;
+
+		for (long[] offsets : toc.offsets) {
+			count += offsets.length;
+		}
+
+		Long[] keys = new Long[count];
+
+		int key = 0;
+
+		for (int index = 0; index < toc.offsets.length; index++) {
+			for (int file = 0; file < toc.offsets[index].length; file++) {
+				keys[key++] = AccessLayout.key(index, file);
+			}
+		}
+
+		Arrays.sort(keys, (first, second) -> Long.compare(offset(first), offset(second)));
+
+		this.order = Arrays.stream(keys).mapToLong(Long::longValue).toArray();
+	}
+
+	@Override
+	protected ArchiveEntry readNext() throws IOException {
+
+		if (payload != null) {
+			IOUtils.skip(payload, Long.MAX_VALUE);
+			payload = null;
+		}
+
+		if (cursor >= order.length) {
+			return null;
+		}
+
+		long key = order[cursor++];
+
+		int index = AccessLayout.index(key);
+
+		int file = AccessLayout.file(key);
+
+		long offset = toc.offsets[index][file];
+
+		long length = toc.fileLengths[index][file];
+
+		if (length == 0) {
+			payload = new ByteArrayInputStream(new byte[0]);
+		} else {
+			seek(offset);
+
+			payload = new BoundedInputStream(in, length);
+
+			position += length;
+		}
+
+		return new ArchiveEntry(index, toc.indexIds[index], toc.indexNames[index], toc.fileIds[index][file], toc.fileNames[index][file], length, payload);
+	}
+
+	/**
+	 * The method that moves the block stream to a decompressed offset, reopening it at the block that holds the offset
+	 * unless the offset can be reached without decompressing a whole block for nothing.
+	 * 
+	 * @param offset
+	 * 		The decompressed offset.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the block cannot be read.
+	 */
+	private void seek(long offset) throws IOException {
+		int target = Arrays.binarySearch(toc.starts, offset);
+
+		if (target < 0) {
+			target = -target - 2;
+		}
+
+		if (in == null || offset < position || toc.starts[target] > position) {
+
+			if (in != null) {
+				in.close();
+			}
+
+			in = new BlockInputStream(channel, toc.positions, toc.compressedLengths, toc.codecs, target, Long.MAX_VALUE);
+
+			position = toc.starts[target];
+		}
+
+		IOUtils.skip(in, offset - position);
+
+		position = offset;
+	}
+
+	/**
+	 * Gets the decompressed offset of a file by its key.
+	 * 
+	 * @param key
+	 * 		The key of the file.
+	 * 
+	 * @return The offset.
+	 */
+	private long offset(long key) {
+		return toc.offsets[AccessLayout.index(key)][AccessLayout.file(key)];
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (in != null) {
+				in.close();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+}
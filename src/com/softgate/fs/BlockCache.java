@@ -0,0 +1,128 @@
+package com.softgate.fs;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of decompressed blocks, bounded by the amount of bytes it holds.
+ * 
+ * @author Chad Adams
+ */
+final class BlockCache {
+
+	/**
+	 * The cached blocks in access order, the least recently used block first.
+	 */
+	private final LinkedHashMap<Integer, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The highest amount of bytes this cache holds.
+	 */
+	private long capacity;
+
+	/**
+	 * The amount of bytes this cache holds.
+	 */
+	private long size;
+
+	/**
+	 * Creates a new {@link BlockCache}.
+	 * 
+	 * @param capacity
+	 * 		The highest amount of bytes this cache holds.
+	 */
+	BlockCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets a cached block and marks it as the most recently used.
+	 * 
+	 * @param block
+	 * 		The block to get.
+	 * 
+	 * @return The decompressed block, or {@code null} if it is not cached.
+	 */
+	synchronized byte[] get(int block) {
+		return blocks.get(block);
+	}
+
+	/**
+	 * The method that checks whether a block is cached, without marking it as used.
+	 * 
+	 * @param block
+	 * 		The block to check.
+	 * 
+	 * @return {@code true} if the block is cached.
+	 */
+	synchronized boolean contains(int block) {
+		return blocks.containsKey(block);
+	}
+
+	/**
+	 * Gets the highest amount of decompressed bytes this cache holds.
+	 * 
+	 * @return The capacity in bytes.
+	 */
+	synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * The method that caches a block, evicting the least recently used blocks until it fits.
+	 * 
+	 * @param block
+	 * 		The block to cache.
+	 * 
+	 * @param data
+	 * 		The decompressed block.
+	 */
+	synchronized void put(int block, byte[] data) {
+
+		if (data.length > capacity) {
+			return;
+		}
+
+		byte[] previous = blocks.put(block, data);
+
+		if (previous != null) {
+			size -= previous.length;
+		}
+
+		size += data.length;
+
+		trim();
+	}
+
+	/**
+	 * Sets the highest amount of bytes this cache holds, evicting blocks if it now holds too many.
+	 * 
+	 * @param capacity
+	 * 		The capacity in bytes.
+	 */
+	synchronized void setCapacity(long capacity) {
+		this.capacity = capacity;
+		trim();
+	}
+
+	/**
+	 * The method that evicts the least recently used blocks until this cache is within its capacity.
+	 */
+	private void trim() {
+		Iterator<Map.Entry<Integer, byte[]>> iterator = blocks.entrySet().iterator();
+
+		while (size > capacity && iterator.hasNext()) {
+			size -= iterator.next().getValue().length;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * The method that removes every cached block.
+	 */
+	synchronized void clear() {
+		blocks.clear();
+		size = 0;
+	}
+
+}
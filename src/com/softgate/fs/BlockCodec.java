@@ -0,0 +1,238 @@
+package com.softgate.fs;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * Represents the algorithm a block of an archive is compressed with.
+ * 
+ * @author Chad Adams
+ */
+public enum BlockCodec {
+
+	/**
+	 * The block is stored as is. It has no compression presets.
+	 */
+	NONE(0) {
+
+		@Override
+		public OutputStream compress(OutputStream out) {
+			return out;
+		}
+
+		@Override
+		public InputStream decompress(InputStream in) {
+			return in;
+		}
+
+	},
+
+	/**
+	 * The block is an XZ stream compressed with the LZMA2 algorithm.
+	 */
+	XZ(1) {
+
+		@Override
+		public OutputStream compress(OutputStream out) throws IOException {
+			return new XZCompressorOutputStream(out);
+		}
+
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return new XZCompressorInputStream(in);
+		}
+
+		@Override
+		public byte[] compress(byte[] data, int offset, int length) throws IOException {
+			return compress(data, offset, length, DEFAULT_PRESET);
+		}
+
+		@Override
+		public byte[] compress(byte[] data, int offset, int length, int preset) throws IOException {
+			LZMA2Options options = new LZMA2Options(preset);
+
+			// the decoder allocates the whole dictionary, which is wasted on a block smaller than it
+			options.setDictSize(Math.max(LZMA2Options.DICT_SIZE_MIN, Math.min(options.getDictSize(), length)));
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(32, length / 2));
+
+			try(OutputStream out = new XZOutputStream(baos, options)) {
+				out.write(data, offset, length);
+			}
+
+			return baos.toByteArray();
+		}
+
+	};
+
+	/**
+	 * The preset blocks are compressed with unless another one is asked for, trading speed for size the same way the
+	 * {@code xz} command line tool does by default.
+	 */
+	public static final int DEFAULT_PRESET = 6;
+
+	/**
+	 * The lowest compression preset, the fastest one.
+	 */
+	public static final int MIN_PRESET = 0;
+
+	/**
+	 * The highest compression preset, the one that compresses the best.
+	 */
+	public static final int MAX_PRESET = 9;
+
+	/**
+	 * The identifier this codec is stored as.
+	 */
+	private final int id;
+
+	/**
+	 * Creates a new {@link BlockCodec}.
+	 * 
+	 * @param id
+	 * 		The identifier this codec is stored as.
+	 */
+	private BlockCodec(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * The method that wraps a stream so that everything written to it gets compressed.
+	 * 
+	 * @param out
+	 * 		The stream the compressed data is written to.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the compressor could not be created.
+	 * 
+	 * @return The compressing stream.
+	 */
+	public abstract OutputStream compress(OutputStream out) throws IOException;
+
+	/**
+	 * The method that wraps a stream so that everything read from it gets decompressed.
+	 * 
+	 * @param in
+	 * 		The stream the compressed data is read from.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the stream is not compressed with this codec.
+	 * 
+	 * @return The decompressing stream.
+	 */
+	public abstract InputStream decompress(InputStream in) throws IOException;
+
+	/**
+	 * The method that compresses a range of bytes.
+	 * 
+	 * @param data
+	 * 		The data to compress.
+	 * 
+	 * @param offset
+	 * 		The offset of the first byte to compress.
+	 * 
+	 * @param length
+	 * 		The amount of bytes to compress.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the data could not be compressed.
+	 * 
+	 * @return The compressed data.
+	 */
+	public byte[] compress(byte[] data, int offset, int length) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(32, length / 2));
+
+		try(OutputStream out = compress(baos)) {
+			out.write(data, offset, length);
+		}
+
+		return baos.toByteArray();
+	}
+
+	/**
+	 * The method that compresses a range of bytes with a compression preset. Codecs without presets ignore it.
+	 * 
+	 * @param data
+	 * 		The data to compress.
+	 * 
+	 * @param offset
+	 * 		The offset of the first byte to compress.
+	 * 
+	 * @param length
+	 * 		The amount of bytes to compress.
+	 * 
+	 * @param preset
+	 * 		The preset, from {@link #MIN_PRESET} to {@link #MAX_PRESET}.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the data could not be compressed.
+	 * 
+	 * @return The compressed data.
+	 */
+	public byte[] compress(byte[] data, int offset, int length, int preset) throws IOException {
+		return compress(data, offset, length);
+	}
+
+	/**
+	 * The method that decompresses a block whose decompressed length is known.
+	 * 
+	 * @param data
+	 * 		The compressed data.
+	 * 
+	 * @param length
+	 * 		The length of the decompressed data.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the data could not be decompressed.
+	 * 
+	 * @return The decompressed data.
+	 */
+	public byte[] decompress(byte[] data, int length) throws IOException {
+		byte[] decompressed = new byte[length];
+
+		try(DataInputStream in = new DataInputStream(decompress(new ByteArrayInputStream(data)))) {
+			in.readFully(decompressed);
+		}
+
+		return decompressed;
+	}
+
+	/**
+	 * Gets the identifier this codec is stored as.
+	 * 
+	 * @return The identifier.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Gets a codec by the identifier it is stored as.
+	 * 
+	 * @param id
+	 * 		The identifier.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if no codec has the identifier.
+	 * 
+	 * @return The codec.
+	 */
+	public static BlockCodec valueOf(int id) throws IOException {
+		for (BlockCodec codec : values()) {
+			if (codec.id == id) {
+				return codec;
+			}
+		}
+
+		throw new IOException(String.format("codec=%d is not supported.", id));
+	}
+
+}
@@ -0,0 +1,131 @@
+package com.softgate.fs;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@link InputStream} that decompresses consecutive blocks of a block archive as one continuous stream, starting
+ * at a given block and ending after a given number of bytes. Only the state of the decompressor is held in memory,
+ * never a whole block.
+ * 
+ * @author Chad Adams
+ */
+final class BlockInputStream extends InputStream {
+
+	/**
+	 * The channel of the archive.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The position of each compressed block in the archive.
+	 */
+	private final long[] positions;
+
+	/**
+	 * The compressed length of each block.
+	 */
+	private final int[] compressedLengths;
+
+	/**
+	 * The codec each block is compressed with.
+	 */
+	private final BlockCodec[] codecs;
+
+	/**
+	 * The block being decompressed.
+	 */
+	private int block;
+
+	/**
+	 * The number of bytes that can still be read.
+	 */
+	private long remaining;
+
+	/**
+	 * The decompressed stream of the current block, or {@code null} if it has not been opened.
+	 */
+	private InputStream in;
+
+	/**
+	 * Creates a new {@link BlockInputStream}.
+	 * 
+	 * @param channel
+	 * 		The channel of the archive.
+	 * 
+	 * @param positions
+	 * 		The position of each block in the archive.
+	 * 
+	 * @param compressedLengths
+	 * 		The compressed length of each block.
+	 * 
+	 * @param codecs
+	 * 		The codec of each block.
+	 * 
+	 * @param block
+	 * 		The block to start at.
+	 * 
+	 * @param length
+	 * 		The number of bytes that can be read, counted from the start of the block.
+	 */
+	BlockInputStream(FileChannel channel, long[] positions, int[] compressedLengths, BlockCodec[] codecs, int block, long length) {
+		this.channel = channel;
+		this.positions = positions;
+		this.compressedLengths = compressedLengths;
+		this.codecs = codecs;
+		this.block = block;
+		this.remaining = length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+
+		if (length == 0) {
+			return 0;
+		}
+
+		if (remaining <= 0) {
+			return -1;
+		}
+
+		length = (int) Math.min(length, remaining);
+
+		while (block < codecs.length) {
+
+			if (in == null) {
+				in = codecs[block].decompress(new BufferedInputStream(new ChannelInputStream(channel, positions[block], compressedLengths[block])));
+			}
+
+			int read = in.read(buffer, offset, length);
+
+			if (read > 0) {
+				remaining -= read;
+				return read;
+			}
+
+			in.close();
+			in = null;
+			block++;
+		}
+
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+			in = null;
+		}
+
+		block = codecs.length;
+	}
+
+}
@@ -0,0 +1,375 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * A read-only view of the payloads in a block archive. Offsets address the archive's payloads as if every block was
+ * decompressed back to back, so a read only has to inflate the block that holds the payload, and recently inflated
+ * blocks are kept in a {@link BlockCache}. Payloads written after the archive was opened are appended to a separate
+ * store.
+ * 
+ * @author Chad Adams
+ */
+final class BlockPayloadStore implements PayloadStore {
+
+	/**
+	 * The channel of the archive.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The decompressed offset of the first byte of each block.
+	 */
+	private final long[] starts;
+
+	/**
+	 * The decompressed length of each block.
+	 */
+	private final int[] lengths;
+
+	/**
+	 * The position of each compressed block in the archive.
+	 */
+	private final long[] positions;
+
+	/**
+	 * The compressed length of each block.
+	 */
+	private final int[] compressedLengths;
+
+	/**
+	 * The codec each block is compressed with.
+	 */
+	private final BlockCodec[] codecs;
+
+	/**
+	 * The decompressed length of all blocks.
+	 */
+	private final long size;
+
+	/**
+	 * The store that holds payloads written after the archive was opened.
+	 */
+	private final PayloadStore overflow;
+
+	/**
+	 * The recently inflated blocks.
+	 */
+	private final BlockCache cache;
+
+	/**
+	 * The listener notified of every block that is inflated, or {@code null} if instrumentation is disabled.
+	 */
+	private volatile FileSystemListener listener;
+
+	/**
+	 * Creates a new {@link BlockPayloadStore}.
+	 * 
+	 * @param channel
+	 * 		The channel of the archive.
+	 * 
+	 * @param starts
+	 * 		The decompressed offset of each block.
+	 * 
+	 * @param lengths
+	 * 		The decompressed length of each block.
+	 * 
+	 * @param positions
+	 * 		The position of each block in the archive.
+	 * 
+	 * @param compressedLengths
+	 * 		The compressed length of each block.
+	 * 
+	 * @param codecs
+	 * 		The codec of each block.
+	 * 
+	 * @param overflow
+	 * 		The store that holds payloads written after the archive was opened.
+	 * 
+	 * @param cacheSize
+	 * 		The highest amount of decompressed bytes to cache.
+	 */
+	BlockPayloadStore(FileChannel channel, long[] starts, int[] lengths, long[] positions, int[] compressedLengths, BlockCodec[] codecs, PayloadStore overflow, long cacheSize) {
+		this.channel = channel;
+		this.starts = starts;
+		this.lengths = lengths;
+		this.positions = positions;
+		this.compressedLengths = compressedLengths;
+		this.codecs = codecs;
+		this.size = starts.length == 0 ? 0 : starts[starts.length - 1] + lengths[lengths.length - 1];
+		this.overflow = overflow;
+		this.cache = new BlockCache(cacheSize);
+	}
+
+	@Override
+	public long write(byte[] data) {
+		return size + overflow.write(data);
+	}
+
+	@Override
+	public void free(long offset, long length) {
+		if (offset >= size) {
+			overflow.free(offset - size, length);
+		}
+	}
+
+	@Override
+	public boolean isReclaimable(long offset) {
+		return offset >= size && overflow.isReclaimable(offset - size);
+	}
+	@Override
+	public byte[] read(long offset, int length) {
+
+		if (offset >= size) {
+			return overflow.read(offset - size, length);
+		}
+
+		if (offset + length > size) {
+			throw new IllegalArgumentException(String.format("offset=%d length=%d exceeds size=%d", offset, length, size));
+		}
+
+		int block = block(offset);
+
+		int inner = (int) (offset - starts[block]);
+
+		if (inner + length <= lengths[block]) {
+			return Arrays.copyOfRange(load(block), inner, inner + length);
+		}
+
+		byte[] data = new byte[length];
+
+		int copied = 0;
+
+		while (copied < length) {
+			int chunk = Math.min(length - copied, lengths[block] - inner);
+
+			System.arraycopy(load(block), inner, data, copied, chunk);
+
+			copied += chunk;
+			block++;
+			inner = 0;
+		}
+
+		return data;
+	}
+
+	@Override
+	public InputStream open(long offset, long length) throws IOException {
+
+		if (offset >= size) {
+			return overflow.open(offset - size, length);
+		}
+
+		if (offset + length > size) {
+			throw new IllegalArgumentException(String.format("offset=%d length=%d exceeds size=%d", offset, length, size));
+		}
+
+		int block = block(offset);
+
+		InputStream in = new BlockInputStream(channel, positions, compressedLengths, codecs, block, offset - starts[block] + length);
+
+		IOUtils.skip(in, offset - starts[block]);
+
+		return in;
+	}
+
+	/**
+	 * Gets a decompressed block from the cache, inflating and caching it if it is not cached.
+	 * 
+	 * @param block
+	 * 		The block to get.
+	 * 
+	 * @return The decompressed block, which must not be modified.
+	 */
+	byte[] load(int block) {
+		FileSystemListener listener = this.listener;
+
+		byte[] data = cache.get(block);
+
+		if (data != null) {
+			if (listener != null) {
+				listener.onCacheHit(-1);
+			}
+			return data;
+		}
+
+		if (listener != null) {
+			listener.onCacheMiss(-1);
+		}
+
+		data = inflate(block);
+
+		cache.put(block, data);
+
+		return data;
+	}
+
+	/**
+	 * The method that inflates and caches every block that holds part of a payload and is not cached yet. Nothing is
+	 * prefetched if the payload lies in the overflow store or its blocks would not fit in the cache together.
+	 * 
+	 * @param offset
+	 * 		The offset of the payload.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @return The amount of blocks that were inflated.
+	 */
+	int prefetch(long offset, long length) {
+
+		if (offset >= size || length <= 0) {
+			return 0;
+		}
+
+		int first = block(offset);
+
+		int last = block(Math.min(offset + length, size) - 1);
+
+		long total = 0;
+
+		for (int block = first; block <= last; block++) {
+			total += lengths[block];
+		}
+
+		if (total > cache.getCapacity()) {
+			return 0;
+		}
+
+		int inflated = 0;
+
+		for (int block = first; block <= last; block++) {
+			if (!cache.contains(block)) {
+				cache.put(block, inflate(block));
+				inflated++;
+			}
+		}
+
+		return inflated;
+	}
+
+	/**
+	 * The method that finds where a payload is stored in the archive. A payload can be located if its blocks are
+	 * stored uncompressed, or if it fills a compressed block by itself.
+	 * 
+	 * @param offset
+	 * 		The offset of the payload.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @return The stored payload, or {@code null} if it is not stored as a single range of the archive.
+	 */
+	StoredPayload locate(long offset, long length) {
+
+		if (offset >= size || length <= 0 || offset + length > size) {
+			return null;
+		}
+
+		int first = block(offset);
+
+		int last = block(offset + length - 1);
+
+		if (first == last && codecs[first] != BlockCodec.NONE) {
+			return starts[first] == offset && lengths[first] == length ? new StoredPayload(channel, positions[first], compressedLengths[first], codecs[first], length) : null;
+		}
+
+		for (int block = first; block <= last; block++) {
+			if (codecs[block] != BlockCodec.NONE || block > first && positions[block] != positions[block - 1] + compressedLengths[block - 1]) {
+				return null;
+			}
+		}
+
+		return new StoredPayload(channel, positions[first] + offset - starts[first], length, BlockCodec.NONE, length);
+	}
+
+	/**
+	 * Gets the block that holds a decompressed offset.
+	 * 
+	 * @param offset
+	 * 		The decompressed offset.
+	 * 
+	 * @return The block.
+	 */
+	int block(long offset) {
+		int block = Arrays.binarySearch(starts, offset);
+		return block >= 0 ? block : -block - 2;
+	}
+
+	/**
+	 * The method that reads a block from the archive and decompresses it.
+	 * 
+	 * @param block
+	 * 		The block to inflate.
+	 * 
+	 * @return The decompressed block.
+	 */
+	byte[] inflate(int block) {
+		FileSystemListener listener = this.listener;
+
+		long start = listener == null ? 0 : System.nanoTime();
+
+		ByteBuffer buffer = ByteBuffer.allocate(compressedLengths[block]);
+
+		try {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, positions[block] + buffer.position()) < 0) {
+					throw new IOException(String.format("block=%d is truncated.", block));
+				}
+			}
+
+			byte[] data = codecs[block].decompress(buffer.array(), lengths[block]);
+
+			if (listener != null) {
+				listener.onDecompress(-1, compressedLengths[block], lengths[block], System.nanoTime() - start);
+			}
+
+			return data;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Sets the highest amount of decompressed bytes to cache.
+	 * 
+	 * @param cacheSize
+	 * 		The cache size in bytes, or 0 to disable caching.
+	 */
+	void setCacheSize(long cacheSize) {
+		cache.setCapacity(cacheSize);
+	}
+
+	/**
+	 * Sets the listener notified of every block that is inflated.
+	 * 
+	 * @param listener
+	 * 		The listener, or {@code null} to disable instrumentation.
+	 */
+	void setListener(FileSystemListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public long size() {
+		return size + overflow.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		cache.clear();
+
+		try {
+			channel.close();
+		} finally {
+			overflow.close();
+		}
+	}
+
+}
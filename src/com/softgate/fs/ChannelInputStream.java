@@ -0,0 +1,88 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@link InputStream} over a range of a {@link FileChannel}. Reads are positional, so several streams can read
+ * the same channel at once and closing a stream leaves the channel open.
+ * 
+ * @author Chad Adams
+ */
+final class ChannelInputStream extends InputStream {
+
+	/**
+	 * The channel to read from.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The position of the next byte to read.
+	 */
+	private long position;
+
+	/**
+	 * The position the range ends at.
+	 */
+	private final long end;
+
+	/**
+	 * Creates a new {@link ChannelInputStream}.
+	 * 
+	 * @param channel
+	 * 		The channel to read from.
+	 * 
+	 * @param position
+	 * 		The position the range starts at.
+	 * 
+	 * @param length
+	 * 		The length of the range.
+	 */
+	ChannelInputStream(FileChannel channel, long position, long length) {
+		this.channel = channel;
+		this.position = position;
+		this.end = position + length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+
+		if (length == 0) {
+			return 0;
+		}
+
+		if (position >= end) {
+			return -1;
+		}
+
+		int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, end - position)), position);
+
+		if (read < 0) {
+			return -1;
+		}
+
+		position += read;
+
+		return read;
+	}
+
+	@Override
+	public long skip(long count) {
+		long skipped = Math.max(0, Math.min(count, end - position));
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(Integer.MAX_VALUE, end - position);
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.softgate.fs;
+
+/**
+ * Represents a listener that is notified of the work an {@link IndexedFileSystem} does. A file system without a
+ * listener skips all timing, so instrumentation costs nothing unless it is installed.
+ * 
+ * <p>Callbacks are made on the thread doing the work and should return quickly.</p>
+ * 
+ * @author Chad Adams
+ */
+public interface FileSystemListener {
+
+	/**
+	 * The method called after a file has been read.
+	 * 
+	 * @param index
+	 * 		The id of the index that was read from.
+	 * 
+	 * @param file
+	 * 		The slot of the file that was read in its index, which is also what a read by name reports.
+	 * 
+	 * @param length
+	 * 		The amount of bytes returned to the caller.
+	 * 
+	 * @param nanos
+	 * 		The time the read took, in nanoseconds.
+	 */
+	default void onRead(int index, int file, int length, long nanos) {
+
+	}
+
+	/**
+	 * The method called after compressed data has been inflated.
+	 * 
+	 * @param index
+	 * 		The id of the index the data belongs to, or {@code -1} if it is not tied to a single index.
+	 * 
+	 * @param compressed
+	 * 		The amount of bytes read from disk.
+	 * 
+	 * @param decompressed
+	 * 		The amount of bytes the data inflated to.
+	 * 
+	 * @param nanos
+	 * 		The time the decompression took, in nanoseconds.
+	 */
+	default void onDecompress(int index, long compressed, long decompressed, long nanos) {
+
+	}
+
+	/**
+	 * The method called when a read was served from an in-memory cache.
+	 * 
+	 * @param index
+	 * 		The id of the index that was read from, or {@code -1} if the cache is not tied to a single index.
+	 */
+	default void onCacheHit(int index) {
+
+	}
+
+	/**
+	 * The method called when a read could not be served from an in-memory cache.
+	 * 
+	 * @param index
+	 * 		The id of the index that was read from, or {@code -1} if the cache is not tied to a single index.
+	 */
+	default void onCacheMiss(int index) {
+
+	}
+
+	/**
+	 * The method that combines several listeners into one that notifies each of them in order.
+	 * 
+	 * @param listeners
+	 * 		The listeners to combine.
+	 * 
+	 * @return The combined listener.
+	 */
+	static FileSystemListener compose(FileSystemListener... listeners) {
+		FileSystemListener[] copy = listeners.clone();
+
+		return new FileSystemListener() {
+
+			@Override
+			public void onRead(int index, int file, int length, long nanos) {
+				for (FileSystemListener listener : copy) {
+					listener.onRead(index, file, length, nanos);
+				}
+			}
+
+			@Override
+			public void onDecompress(int index, long compressed, long decompressed, long nanos) {
+				for (FileSystemListener listener : copy) {
+					listener.onDecompress(index, compressed, decompressed, nanos);
+				}
+			}
+
+			@Override
+			public void onCacheHit(int index) {
+				for (FileSystemListener listener : copy) {
+					listener.onCacheHit(index);
+				}
+			}
+
+			@Override
+			public void onCacheMiss(int index) {
+				for (FileSystemListener listener : copy) {
+					listener.onCacheMiss(index);
+				}
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.softgate.fs;
+import java.io.IOException;
+
+/**
+ * Represents a strategy that opens an encoded {@link IndexedFileSystem} from a path.
+ * 
+ * @author Chad Adams
+ */
+@FunctionalInterface
+public interface FileSystemLoader {
+
+	/**
+	 * The method that opens the file system at a path.
+	 * 
+	 * @param path
+	 * 		The path of the encoded file system.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the file cannot be decoded or does not exist.
+	 * 
+	 * @return The opened file system.
+	 */
+	IndexedFileSystem load(String path) throws IOException;
+
+}
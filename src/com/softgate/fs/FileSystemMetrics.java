@@ -0,0 +1,262 @@
+package com.softgate.fs;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A {@link FileSystemListener} that aggregates the reads, decompressions and cache behavior of one or more
+ * {@link IndexedFileSystem}s, and can publish them as a JMX MBean.
+ * 
+ * @author Chad Adams
+ */
+public class FileSystemMetrics implements FileSystemListener, FileSystemMetricsMBean {
+
+	/**
+	 * The highest amount of indexes a file system can contain.
+	 */
+	private static final int MAX_INDEXES = 256;
+
+	/**
+	 * The amount of reads per index.
+	 */
+	private final LongAdder[] reads = new LongAdder[MAX_INDEXES];
+
+	/**
+	 * The latencies of reads.
+	 */
+	private final LatencyHistogram readLatency = new LatencyHistogram();
+
+	/**
+	 * The latencies of decompressions.
+	 */
+	private final LatencyHistogram decompressLatency = new LatencyHistogram();
+
+	/**
+	 * The amount of compressed bytes read from disk.
+	 */
+	private final LongAdder bytesIn = new LongAdder();
+
+	/**
+	 * The amount of bytes returned to callers.
+	 */
+	private final LongAdder bytesOut = new LongAdder();
+
+	/**
+	 * The amount of reads served from a cache.
+	 */
+	private final LongAdder cacheHits = new LongAdder();
+
+	/**
+	 * The amount of reads that missed a cache.
+	 */
+	private final LongAdder cacheMisses = new LongAdder();
+
+	/**
+	 * The name this instance is registered under, or {@code null} if it is not registered.
+	 */
+	private ObjectName objectName;
+
+	/**
+	 * Creates a new {@link FileSystemMetrics}.
+	 */
+	public FileSystemMetrics() {
+		for (int i = 0; i < reads.length; i++) {
+			reads[i] = new LongAdder();
+		}
+	}
+
+	@Override
+	public void onRead(int index, int file, int length, long nanos) {
+		reads[index & 0xFF].increment();
+		readLatency.record(nanos);
+		bytesOut.add(length);
+	}
+
+	@Override
+	public void onDecompress(int index, long compressed, long decompressed, long nanos) {
+		decompressLatency.record(nanos);
+		bytesIn.add(compressed);
+	}
+
+	@Override
+	public void onCacheHit(int index) {
+		cacheHits.increment();
+	}
+
+	@Override
+	public void onCacheMiss(int index) {
+		cacheMisses.increment();
+	}
+
+	/**
+	 * The method that registers these metrics with the platform MBean server.
+	 * 
+	 * @param name
+	 * 		The name to tell this file system apart from others in the same process.
+	 * 
+	 * @throws JMException
+	 * 		The exception thrown if the MBean could not be registered.
+	 */
+	public synchronized void register(String name) throws JMException {
+
+		if (objectName != null) {
+			throw new IllegalStateException(String.format("metrics are already registered as %s", objectName));
+		}
+
+		ObjectName objectName = new ObjectName("com.softgate.fs", "name", ObjectName.quote(name));
+
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+		this.objectName = objectName;
+	}
+
+	/**
+	 * The method that removes these metrics from the platform MBean server.
+	 * 
+	 * @throws JMException
+	 * 		The exception thrown if the MBean could not be unregistered.
+	 */
+	public synchronized void unregister() throws JMException {
+		if (objectName != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Gets the amount of reads made against an index.
+	 * 
+	 * @param index
+	 * 		The id of the index.
+	 * 
+	 * @return The amount of reads.
+	 */
+	public long getReads(int index) {
+		return reads[index & 0xFF].sum();
+	}
+
+	/**
+	 * Gets the histogram of read latencies.
+	 * 
+	 * @return The read latencies.
+	 */
+	public LatencyHistogram getReadLatency() {
+		return readLatency;
+	}
+
+	/**
+	 * Gets the histogram of decompression latencies.
+	 * 
+	 * @return The decompression latencies.
+	 */
+	public LatencyHistogram getDecompressLatency() {
+		return decompressLatency;
+	}
+
+	@Override
+	public long getReads() {
+		return readLatency.getCount();
+	}
+
+	@Override
+	public long[] getReadsPerIndex() {
+		int last = reads.length - 1;
+
+		while (last >= 0 && reads[last].sum() == 0) {
+			last--;
+		}
+
+		long[] counts = new long[last + 1];
+
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = reads[i].sum();
+		}
+
+		return counts;
+	}
+
+	@Override
+	public long getReadLatencyMeanMicros() {
+		return readLatency.getMean(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getReadLatencyP50Micros() {
+		return readLatency.getPercentile(50, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getReadLatencyP99Micros() {
+		return readLatency.getPercentile(99, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getReadLatencyMaxMicros() {
+		return readLatency.getMax(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getDecompressions() {
+		return decompressLatency.getCount();
+	}
+
+	@Override
+	public long getDecompressLatencyP50Micros() {
+		return decompressLatency.getPercentile(50, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getDecompressLatencyP99Micros() {
+		return decompressLatency.getPercentile(99, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getDecompressLatencyMaxMicros() {
+		return decompressLatency.getMax(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits.sum();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = cacheHits.sum();
+		long total = hits + cacheMisses.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder adder : reads) {
+			adder.reset();
+		}
+
+		readLatency.reset();
+		decompressLatency.reset();
+		bytesIn.reset();
+		bytesOut.reset();
+		cacheHits.reset();
+		cacheMisses.reset();
+	}
+
+}
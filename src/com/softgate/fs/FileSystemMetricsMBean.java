@@ -0,0 +1,42 @@
+package com.softgate.fs;
+
+/**
+ * The management interface of {@link FileSystemMetrics}, exposing its counters over JMX.
+ * 
+ * @author Chad Adams
+ */
+public interface FileSystemMetricsMBean {
+
+	long getReads();
+
+	long[] getReadsPerIndex();
+
+	long getReadLatencyMeanMicros();
+
+	long getReadLatencyP50Micros();
+
+	long getReadLatencyP99Micros();
+
+	long getReadLatencyMaxMicros();
+
+	long getDecompressions();
+
+	long getDecompressLatencyP50Micros();
+
+	long getDecompressLatencyP99Micros();
+
+	long getDecompressLatencyMaxMicros();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	double getCacheHitRate();
+
+	void reset();
+
+}
@@ -0,0 +1,38 @@
+package com.softgate.fs;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link PayloadStore} that packs payloads into a few large arrays on the java heap.
+ * 
+ * @author Chad Adams
+ */
+public class HeapPayloadStore extends RegionPayloadStore {
+
+	/**
+	 * The default size of a single heap region.
+	 */
+	public static final int DEFAULT_REGION_SIZE = 1024 * 1024;
+
+	/**
+	 * Creates a new {@link HeapPayloadStore} with the default region size.
+	 */
+	public HeapPayloadStore() {
+		this(DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link HeapPayloadStore}.
+	 * 
+	 * @param regionSize
+	 * 		The size of each array this store allocates.
+	 */
+	public HeapPayloadStore(int regionSize) {
+		super(regionSize);
+	}
+
+	@Override
+	protected ByteBuffer allocate(int size) {
+		return ByteBuffer.allocate(size);
+	}
+
+}
@@ -17,7 +17,7 @@ public class Index {
 	/**
 	 * The collection of files in this index.
 	 */
-	private final List<IndexedFile> files = new ArrayList<>();
+	private final List<IndexedFile> files;
 	
 	/**
 	 * The identifier of this index.
@@ -33,6 +33,17 @@ public class Index {
 	 * The private constructor to prevent instantiation.
 	 */
 	private Index() {
+		this(new ArrayList<>());
+	}
+	
+	/**
+	 * The private constructor that uses a specific collection to hold the files.
+	 * 
+	 * @param files
+	 * 		The collection of files.
+	 */
+	private Index(List<IndexedFile> files) {
+		this.files = files;
 	}
 	
 	/**
@@ -41,7 +52,7 @@ public class Index {
 	 * @return The copied {@link Index}.
 	 */
 	public Index copy() {
-		Index copy = Index.create(id, name);		
+		Index copy = files instanceof PackedFileList ? Index.create(id, name, ((PackedFileList) files).getStore()) : Index.create(id, name);		
 		
 		files.forEach(it -> copy.getFiles().add(it));
 		
@@ -81,6 +92,28 @@ public class Index {
 		return idx;
 	}
 	
+	/**
+	 * The method to create an {@link Index} that keeps its files packed in primitive arrays, with the payloads held
+	 * by a {@link PayloadStore} rather than by individual {@link IndexedFile} objects.
+	 * 
+	 * @param id
+	 * 		The id of the index to create.
+	 * 
+	 * @param name
+	 * 		The name of the index to create.
+	 * 
+	 * @param store
+	 * 		The store that will hold the payloads of this index.
+	 * 
+	 * @return The created index.
+	 */
+	public static Index create(int id, String name, PayloadStore store) {
+		Index idx = new Index(new PackedFileList(store));
+		idx.id = id;
+		idx.name = name;
+		return idx;
+	}
+	
 	/**
 	 * The method to create an {@link Index}.
 	 * 
@@ -164,7 +197,8 @@ public class Index {
 	}
 	
 	/**
-	 * The method that adds a {@link File}'s data to this index.
+	 * The method that adds a {@link File}'s data to this index. The data is read when the file is added, use
+	 * {@link #add(String, long, PayloadSource)} to stream a file that is too large for memory instead.
 	 * 
 	 * @param file
 	 * 		The file to add.
@@ -178,6 +212,52 @@ public class Index {
 		return add(file.getName(), Files.readAllBytes(file.toPath()));
 	}
 	
+	/**
+	 * The method that adds a data file whose payload is streamed from a {@link PayloadSource} to this index.
+	 * 
+	 * @param name
+	 * 		The name of the file to add.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @param source
+	 * 		The source the payload is streamed from.
+	 * 
+	 * @return The index of the data that was added.
+	 */
+	public Index add(String name, long length, PayloadSource source) {
+		return add(files.size(), name, length, source);
+	}
+	
+	/**
+	 * The method that adds a data file whose payload is streamed from a {@link PayloadSource} to this index.
+	 * 
+	 * @param id
+	 * 		The id of the file to add.
+	 * 
+	 * @param name
+	 * 		The name of the file to add.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @param source
+	 * 		The source the payload is streamed from.
+	 * 
+	 * @return The index of the data that was added.
+	 */
+	public Index add(int id, String name, long length, PayloadSource source) {
+		
+		if (files.isEmpty()) {
+			files.add(new IndexedFile(new IndexedFileHeader(0, name), length, source));
+			return this;
+		}
+		
+		files.add(id, new IndexedFile(new IndexedFileHeader(id, name), length, source));
+		return this;
+	}
+	
 	/**
 	 * The method that adds an in-memory data file with no payload to a specified {@link Index}.
 	 * 
@@ -286,7 +366,7 @@ public class Index {
 	 * 		The name of the file to remove.
 	 */
 	public void remove(String name) {
-		files.stream().filter(it -> it.getHeader().getName().equalsIgnoreCase(name)).findFirst().ifPresent(it -> remove(it.getHeader().getId()));		
+		getFile(name).ifPresent(it -> remove(it.getHeader().getId()));		
 	}
 	
 	/**
@@ -329,7 +409,7 @@ public class Index {
 	 * 
 	 */
 	public void replace(String name, File file) throws IOException {
-		Optional<IndexedFile> optional = files.stream().filter(it -> it.getHeader().getName().equalsIgnoreCase(name)).findFirst();
+		Optional<IndexedFile> optional = getFile(name);
 		
 		if (optional.isPresent()) {
 			
@@ -390,7 +470,31 @@ public class Index {
 	 * @return The optional describing the result.
 	 */
 	public Optional<IndexedFile> getFile(String name) {
-		return files.stream().filter(it -> it.getHeader().getName().equalsIgnoreCase(name)).findFirst();
+		int slot = indexOf(name);
+		return slot == -1 ? Optional.empty() : Optional.of(files.get(slot));
+	}
+	
+	/**
+	 * The method that finds the slot of the first file with a name, ignoring case.
+	 * 
+	 * @param name
+	 * 		The name of the file to find.
+	 * 
+	 * @return The slot of the file, or {@code -1} if no file has the name.
+	 */
+	int indexOf(String name) {
+		
+		if (files instanceof PackedFileList) {
+			return ((PackedFileList) files).indexOf(name);
+		}
+		
+		for (int slot = 0; slot < files.size(); slot++) {
+			if (files.get(slot).getHeader().getName().equalsIgnoreCase(name)) {
+				return slot;
+			}
+		}
+		
+		return -1;
 	}
 	
 	/**
@@ -1,4 +1,11 @@
 package com.softgate.fs;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import org.apache.commons.compress.utils.IOUtils;
 
 /**
  * A wrapper class that will contain a files actual data.
@@ -17,6 +24,16 @@ public class IndexedFile {
 	 */
 	private byte[] payload;	
 	
+	/**
+	 * The source the payload is streamed from, or {@code null} if the payload is held in memory.
+	 */
+	private PayloadSource source;
+	
+	/**
+	 * The length of the payload streamed from the source.
+	 */
+	private long length;
+	
 	public IndexedFile(IndexedFileHeader header) {
 		this(header, new byte[0]);
 	}
@@ -35,16 +52,101 @@ public class IndexedFile {
 		this.payload = payload;
 	}
 	
+	/**
+	 * Creates a new {@link IndexedFile} whose payload is streamed from a source whenever it is read, so that it is
+	 * never held in memory unless {@link #getPayload()} is called.
+	 * 
+	 * @param header
+	 * 		The header of this file.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @param source
+	 * 		The source the payload is streamed from.
+	 */
+	public IndexedFile(IndexedFileHeader header, long length, PayloadSource source) {
+		this.header = header;
+		this.length = length;
+		this.source = source;
+	}
+	
 	public IndexedFile copy() {		
-		return new IndexedFile(header, payload);
+		return source == null ? new IndexedFile(header, payload) : new IndexedFile(header, length, source);
 	}
 
+	/**
+	 * Gets the payload of this file, reading it into memory if it is streamed from a source.
+	 * 
+	 * @return The payload.
+	 */
 	public byte[] getPayload() {
-		return payload;
+		
+		if (source == null) {
+			return payload;
+		}
+		
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException(String.format("file=[%d, %s] is too large to read into memory: %d", header.getId(), header.getName(), length));
+		}
+		
+		try(InputStream in = source.open()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+			IOUtils.copy(in, out);
+			return out.toByteArray();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	/**
+	 * The method that opens a stream of the payload, which never holds more than a small part of it in memory.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the payload cannot be opened.
+	 * 
+	 * @return The stream, which the caller closes.
+	 */
+	public InputStream getInputStream() throws IOException {
+		return source == null ? new ByteArrayInputStream(payload) : source.open();
+	}
+	
+	/**
+	 * Gets the length of the payload without copying it out of the backing storage.
+	 * 
+	 * @return The length in bytes.
+	 */
+	public long getLength() {
+		return source == null ? payload.length : length;
 	}
 
 	public void setPayload(byte[] payload) {		
 		this.payload = payload;
+		this.source = null;
+	}
+	
+	/**
+	 * Sets the payload of this file to one that is streamed from a source.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @param source
+	 * 		The source the payload is streamed from.
+	 */
+	public void setPayload(long length, PayloadSource source) {
+		this.payload = null;
+		this.length = length;
+		this.source = source;
+	}
+
+	/**
+	 * Gets the source the payload is streamed from.
+	 * 
+	 * @return The source, or {@code null} if the payload is held in memory.
+	 */
+	PayloadSource getSource() {
+		return source;
 	}
 
 	public IndexedFileHeader getHeader() {
@@ -1,4 +1,5 @@
 package com.softgate.fs;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
@@ -7,12 +8,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.utils.CountingInputStream;
 
 /**
  * Represents a file system based on indexes.
@@ -24,26 +30,54 @@ public class IndexedFileSystem implements Closeable {
 	/**
 	 * The collection of indexes in this file system.
 	 */
-	private final List<Index> indexes = new ArrayList<>(255);	
+	private final List<Index> indexes = new ArrayList<>(255);
+
+	/**
+	 * The store that holds the payloads of decoded indexes, or {@code null} if payloads are kept on the heap.
+	 */
+	private final PayloadStore store;
 	
+	/**
+	 * The listener that is notified of the work this file system does, or {@code null} if instrumentation is disabled.
+	 */
+	private volatile FileSystemListener listener;
+
 	/**
 	 * The private constructor
+	 * 
+	 * @param store
+	 * 		The store that holds the payloads of decoded indexes.
 	 */
-	private IndexedFileSystem() {
-		
+	private IndexedFileSystem(PayloadStore store) {
+		this.store = store;
 	}
-	
+
 	/**
 	 * The method to create a new {@link IndexedFileSystem}.
 	 * 
 	 * @return The indexed file system.
 	 */
 	public static IndexedFileSystem create() {
-		return new IndexedFileSystem();
+		return new IndexedFileSystem(null);
 	}
-	
+
 	/**
-	 * The method that will decode an already encoded {@link IndexedFileSystem} back into memory.
+	 * The method to create a new {@link IndexedFileSystem} whose decoded payloads are held by a {@link PayloadStore}.
+	 * The file system takes ownership of the store and closes it when the file system is closed.
+	 * 
+	 * @param store
+	 * 		The store that will hold the payloads.
+	 * 
+	 * @return The indexed file system.
+	 */
+	public static IndexedFileSystem create(PayloadStore store) {
+		return new IndexedFileSystem(store);
+	}
+
+	/**
+	 * The method that will decode an already encoded {@link IndexedFileSystem} back into memory, with an object per
+	 * file. Pass a store such as a {@link HeapPayloadStore} to {@link #decode(String, PayloadStore)} to hold every
+	 * {@link Index} in columnar form instead, so no object is created per file until a caller asks for one.
 	 * 
 	 * @param path
 	 * 		The path of the file to decode.
@@ -52,9 +86,61 @@ public class IndexedFileSystem implements Closeable {
 	 * @return The indexed file system.
 	 */
 	public static IndexedFileSystem decode(String path) throws IOException {		
-		IndexedFileSystem fs = IndexedFileSystem.create();
+		return decode(path, null);
+	}
+	
+	/**
+	 * The method that will decode an already encoded {@link IndexedFileSystem}, placing every payload in a
+	 * {@link PayloadStore} instead of on the heap.
+	 * 
+	 * @param path
+	 * 		The path of the file to decode.
+	 * 
+	 * @param store
+	 * 		The store that will hold the payloads, or {@code null} to keep them on the heap.
+	 * 
+	 * @throws IOException, if the file cannot be decoded or does not exist.
+	 * @return The indexed file system.
+	 */
+	public static IndexedFileSystem decode(String path, PayloadStore store) throws IOException {		
+		return decode(path, store, null);
+	}
+	
+	/**
+	 * The method that will decode an already encoded {@link IndexedFileSystem}, reporting the decompression and every
+	 * later read to a {@link FileSystemListener}.
+	 * 
+	 * @param path
+	 * 		The path of the file to decode.
+	 * 
+	 * @param store
+	 * 		The store that will hold the payloads, or {@code null} to keep them on the heap.
+	 * 
+	 * @param listener
+	 * 		The listener to notify, or {@code null} to disable instrumentation.
+	 * 
+	 * @throws IOException, if the file cannot be decoded or does not exist.
+	 * @return The indexed file system.
+	 */
+	public static IndexedFileSystem decode(String path, PayloadStore store, FileSystemListener listener) throws IOException {		
+		
+		if (BlockArchive.isBlockArchive(Paths.get(path))) {
+			return BlockArchive.open(Paths.get(path), store == null ? new HeapPayloadStore() : store, listener);
+		}
+		
+		if (ShardedArchive.isDescriptor(Paths.get(path))) {
+			return ShardedArchive.open(Paths.get(path), store == null ? new HeapPayloadStore() : store, listener);
+		}
+		
+		IndexedFileSystem fs = IndexedFileSystem.create(store);
+		
+		fs.setListener(listener);
 		
-		try(DataInputStream dis = new DataInputStream(new XZCompressorInputStream(new FileInputStream(Paths.get(path).toFile())))) {
+		long start = System.nanoTime();
+		
+		CountingInputStream counter;
+		
+		try(DataInputStream dis = new DataInputStream(counter = new CountingInputStream(new XZCompressorInputStream(new FileInputStream(Paths.get(path).toFile()))))) {
 			
 			int indexes = dis.readInt();
 			
@@ -66,7 +152,7 @@ public class IndexedFileSystem implements Closeable {
 				
 				int files = dis.readInt();
 				
-				fs.add(Index.create(id, name));
+				fs.add(store == null ? Index.create(id, name) : Index.create(id, name, store));
 				
 				for (int file = 0; file < files; file++) {
 					
@@ -92,6 +178,10 @@ public class IndexedFileSystem implements Closeable {
 			
 		}
 		
+		if (listener != null) {
+			listener.onDecompress(-1, Files.size(Paths.get(path)), counter.getBytesRead(), System.nanoTime() - start);
+		}
+		
 		return fs;
 	}
 	
@@ -105,7 +195,27 @@ public class IndexedFileSystem implements Closeable {
 		
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		
-		try(DataOutputStream out = new DataOutputStream(new XZCompressorOutputStream(baos))) {			
+		encode(baos);
+		
+		return baos.toByteArray();		
+	}
+	
+	/**
+	 * The method that encodes this {@IndexedFileSystem} into a stream. Payloads are streamed through the compressor, so
+	 * neither the encoded file system nor any single payload has to fit in memory. This format stores lengths as ints,
+	 * so files of 2GB or more have to be written as a block archive instead.
+	 * 
+	 * @param os
+	 * 		The stream to write to, which is closed once the file system has been written.
+	 * 
+	 * @throws IOException
+	 * 		The exception being thrown if data cannot be written, or a file is too large for this format.
+	 */
+	public void encode(OutputStream os) throws IOException {
+		
+		byte[] buffer = new byte[64 * 1024];
+		
+		try(DataOutputStream out = new DataOutputStream(new XZCompressorOutputStream(os))) {			
 			out.writeInt(indexes.size());
 			
 			for(Index idx : indexes) {	
@@ -122,35 +232,165 @@ public class IndexedFileSystem implements Closeable {
 					
 					int fileId = file.getHeader().getId();
 					String name = file.getHeader().getName();
-					int length = file.getPayload().length;
+					long length = file.getLength();
+					
+					if (length > Integer.MAX_VALUE) {
+						throw new IOException(String.format("file=[%d, %s] is too large for this format: %d, write a block archive instead.", fileId, name, length));
+					}
 					
 					out.writeInt(fileId);
 					out.writeUTF(name);
-					out.writeInt(length);
+					out.writeInt((int) length);
 					
-					byte[] payload = file.getPayload();					
+					long written = 0;
 					
-					out.write(payload);
+					try(InputStream in = file.getInputStream()) {
+						int read;
+						
+						while (written < length && (read = in.read(buffer, 0, (int) Math.min(buffer.length, length - written))) != -1) {
+							out.write(buffer, 0, read);
+							written += read;
+						}
+						
+						if (written == length && in.read() != -1) {
+							throw new IOException(String.format("file=[%d, %s] is longer than its length of %d bytes.", fileId, name, length));
+						}
+					}
+					
+					if (written != length) {
+						throw new IOException(String.format("file=[%d, %s] ended after %d of %d bytes.", fileId, name, written, length));
+					}
 					
 				}
 				
 			}
 			
 		}	
-		
-		return baos.toByteArray();		
 	}
 	
 	public void write(File file) throws IOException {		
 		
-		byte[] data = encode();
-		
-		try(FileOutputStream fis = new FileOutputStream(file)) {
-			fis.write(data);
+		try(OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			encode(out);
 		}
 		
 	}
 	
+	/**
+	 * The method that writes this {@link IndexedFileSystem} as a block archive, where every cluster of the layout is
+	 * compressed on its own. A block archive is opened by {@link #decode(String)} without decompressing it up front,
+	 * and a read only inflates the block that holds the file.
+	 * 
+	 * @param file
+	 * 		The file to write to.
+	 * 
+	 * @param layout
+	 * 		The order to write the files in, see {@link LayoutOptimizer}.
+	 * 
+	 * @throws IOException
+	 * 		The exception being thrown if data cannot be written to a file.
+	 */
+	public void write(File file, AccessLayout layout) throws IOException {
+		write(file, layout, BlockCodec.XZ);
+	}
+	
+	/**
+	 * The method that writes this {@link IndexedFileSystem} as a block archive compressed with a specific codec. An
+	 * archive written with {@link BlockCodec#NONE} is larger, but its payloads can be served straight from disk, see
+	 * {@link #locate(int, int)}.
+	 * 
+	 * @param file
+	 * 		The file to write to.
+	 * 
+	 * @param layout
+	 * 		The order to write the files in, see {@link LayoutOptimizer}.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the blocks with.
+	 * 
+	 * @throws IOException
+	 * 		The exception being thrown if data cannot be written to a file.
+	 */
+	public void write(File file, AccessLayout layout, BlockCodec codec) throws IOException {
+		BlockArchive.write(this, file, layout, codec);
+	}
+	
+	/**
+	 * The method that writes this {@link IndexedFileSystem} as a block archive, packing consecutive files of each
+	 * {@link Index} into blocks of a target size. Larger blocks compress better, smaller blocks are faster to read.
+	 * 
+	 * @param file
+	 * 		The file to write to.
+	 * 
+	 * @param blockSize
+	 * 		The target amount of decompressed bytes per block.
+	 * 
+	 * @throws IOException
+	 * 		The exception being thrown if data cannot be written to a file.
+	 */
+	public void write(File file, int blockSize) throws IOException {
+		write(file, AccessLayout.natural(this, blockSize));
+	}
+	
+	/**
+	 * The method that writes this {@link IndexedFileSystem} as a sharded archive: a small descriptor at {@code file}
+	 * and several block archives next to it, named after the descriptor, the shard and the generation they were
+	 * written in, such as {@code file.0.1}. Whole indexes are packed into each shard, so shards can be read, downloaded
+	 * and updated independently. The shards of an archive previously written to {@code file} are deleted once the new
+	 * descriptor is in place. A sharded archive is opened by passing the descriptor to {@link #decode(String)}.
+	 * 
+	 * @param file
+	 * 		The descriptor to write.
+	 * 
+	 * @param shardSize
+	 * 		The target amount of payload bytes per shard, or 0 to give every index a shard of its own.
+	 * 
+	 * @param blockSize
+	 * 		The target amount of decompressed bytes per block.
+	 * 
+	 * @throws IOException
+	 * 		The exception being thrown if data cannot be written to a file.
+	 */
+	public void writeSharded(File file, long shardSize, int blockSize) throws IOException {
+		ShardedArchive.write(this, file, shardSize, blockSize, BlockCodec.XZ);
+	}
+	
+	/**
+	 * The method that rewrites a single shard of a sharded archive from the current contents of the indexes it holds,
+	 * leaving every other shard untouched. The shard is written under a new name, then the descriptor is replaced
+	 * atomically and the shard it replaced is deleted.
+	 * 
+	 * @param file
+	 * 		The descriptor of the archive.
+	 * 
+	 * @param shard
+	 * 		The shard to rewrite.
+	 * 
+	 * @param blockSize
+	 * 		The target amount of decompressed bytes per block.
+	 * 
+	 * @throws IOException
+	 * 		The exception being thrown if the descriptor cannot be read or the shard cannot be written.
+	 */
+	public void writeShard(File file, int shard, int blockSize) throws IOException {
+		ShardedArchive.writeShard(this, file, shard, blockSize, BlockCodec.XZ);
+	}
+	
+	/**
+	 * The method that lists the data files of a sharded archive, for instance to download them in parallel.
+	 * 
+	 * @param path
+	 * 		The path of the descriptor.
+	 * 
+	 * @throws IOException
+	 * 		The exception being thrown if the descriptor cannot be read.
+	 * 
+	 * @return The data files.
+	 */
+	public static List<File> getShards(String path) throws IOException {
+		return ShardedArchive.shards(Paths.get(path));
+	}
+	
 	/**
 	 * The method that adds an {@link Index} to this {@link IndexedFileSystem}. If the target position
 	 * already has a non-empty index all items after the target position get shifted to the right, their id's are increased
@@ -261,13 +501,25 @@ public class IndexedFileSystem implements Closeable {
 			throw new IllegalArgumentException(String.format("id=%d is out of range: %d", id, indexes.size()));
 		}
 		
-		for (IndexedFile file : indexes.get(id).getFiles()) {
-			if (file.getHeader().getName().equalsIgnoreCase(fileName)) {
-				return file.getPayload();
-			}
+		FileSystemListener listener = this.listener;
+		
+		long start = listener == null ? 0 : System.nanoTime();
+		
+		Index index = indexes.get(id);
+		
+		int slot = index.indexOf(fileName);
+		
+		if (slot == -1) {
+			return null;
+		}
+		
+		byte[] payload = index.getFiles().get(slot).getPayload();
+		
+		if (listener != null) {
+			listener.onRead(id, slot, payload.length, System.nanoTime() - start);
 		}
 		
-		return null;
+		return payload;
 	}
 	
 	/**
@@ -287,7 +539,96 @@ public class IndexedFileSystem implements Closeable {
 			throw new IllegalArgumentException(String.format("index=[%d] out of range.", id));
 		}		
 		
-		return indexes.get(id).getFiles().get(file).getPayload();
+		FileSystemListener listener = this.listener;
+		
+		if (listener == null) {
+			return indexes.get(id).getFiles().get(file).getPayload();
+		}
+		
+		long start = System.nanoTime();
+		
+		byte[] payload = indexes.get(id).getFiles().get(file).getPayload();
+		
+		listener.onRead(id, file, payload.length, System.nanoTime() - start);
+		
+		return payload;
+	}
+	
+	/**
+	 * The method that opens a stream of a specific {@link IndexedFile}, which never holds more than a small part of
+	 * the payload in memory. Unlike {@link #read(int, int)}, this works for files of any size.
+	 * 
+	 * @param id
+	 * 		The id of the index to read from.
+	 * 
+	 * @param file
+	 * 		The id of the file to read.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the payload cannot be opened.
+	 * 
+	 * @return The stream, which the caller closes.
+	 */
+	public InputStream openStream(int id, int file) throws IOException {
+		
+		if (id >= indexes.size() || id < 0) {
+			throw new IllegalArgumentException(String.format("index=[%d] out of range.", id));
+		}
+		
+		return indexes.get(id).getFiles().get(file).getInputStream();
+	}
+	
+	/**
+	 * The method that opens a stream of an {@link IndexedFile} by its name.
+	 * 
+	 * @param id
+	 * 		The id of the index to read from.
+	 * 
+	 * @param fileName
+	 * 		The name of the indexed file.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the payload cannot be opened.
+	 * 
+	 * @return The stream, which the caller closes, or {@code null} if there is no such file.
+	 */
+	public InputStream openStream(int id, String fileName) throws IOException {
+		
+		if (id >= indexes.size() || id < 0) {
+			throw new IllegalArgumentException(String.format("index=[%d] out of range.", id));
+		}
+		
+		Optional<IndexedFile> file = indexes.get(id).getFile(fileName);
+		
+		return file.isPresent() ? file.get().getInputStream() : null;
+	}
+	
+	/**
+	 * The method that finds where the payload of an {@link IndexedFile} is stored on disk, so that it can be sent
+	 * without being decompressed. Only files of a block or sharded archive whose payload is stored uncompressed, or
+	 * fills a compressed block by itself, can be located.
+	 * 
+	 * @param id
+	 * 		The id of the index to read from.
+	 * 
+	 * @param file
+	 * 		The id of the file to locate.
+	 * 
+	 * @return The stored payload, or {@code null} if the payload is not stored as a single range of an archive.
+	 */
+	public StoredPayload locate(int id, int file) {
+		
+		if (id >= indexes.size() || id < 0) {
+			throw new IllegalArgumentException(String.format("index=[%d] out of range.", id));
+		}
+		
+		List<IndexedFile> files = indexes.get(id).getFiles();
+		
+		if (file >= files.size() || file < 0) {
+			throw new IllegalArgumentException(String.format("file=[%d] out of range.", file));
+		}
+		
+		return files instanceof PackedFileList ? ((PackedFileList) files).locate(file) : null;
 	}
 	
 	/**
@@ -302,6 +643,46 @@ public class IndexedFileSystem implements Closeable {
 		return indexes.get(id);
 	}
 	
+	/**
+	 * Sets the listener that is notified of the reads made against this file system.
+	 * 
+	 * @param listener
+	 * 		The listener, or {@code null} to disable instrumentation.
+	 */
+	public void setListener(FileSystemListener listener) {
+		this.listener = listener;
+		
+		if (store instanceof BlockPayloadStore) {
+			((BlockPayloadStore) store).setListener(listener);
+		} else if (store instanceof ShardedPayloadStore) {
+			((ShardedPayloadStore) store).setListener(listener);
+		}
+	}
+	
+	/**
+	 * Sets the highest amount of decompressed blocks a file system opened from a block archive keeps in memory. Has no
+	 * effect on a file system that was decoded into memory.
+	 * 
+	 * @param bytes
+	 * 		The cache size in bytes, or 0 to disable caching.
+	 */
+	public void setBlockCacheSize(long bytes) {
+		if (store instanceof BlockPayloadStore) {
+			((BlockPayloadStore) store).setCacheSize(bytes);
+		} else if (store instanceof ShardedPayloadStore) {
+			((ShardedPayloadStore) store).setCacheSize(bytes);
+		}
+	}
+	
+	/**
+	 * Gets the listener that is notified of the reads made against this file system.
+	 * 
+	 * @return The listener, or {@code null} if instrumentation is disabled.
+	 */
+	public FileSystemListener getListener() {
+		return listener;
+	}
+	
 	/**
 	 * Gets the collection of {@link Index}'s in this {@link IndexedFileSystem}.
 	 */
@@ -312,6 +693,10 @@ public class IndexedFileSystem implements Closeable {
 	@Override
 	public void close() throws IOException {
 		indexes.clear();
+		
+		if (store != null) {
+			store.close();
+		}
 	}
 
 }
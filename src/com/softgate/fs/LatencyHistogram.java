@@ -0,0 +1,191 @@
+package com.softgate.fs;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds. Like an HDR histogram, values are grouped into buckets that double
+ * in width with every power of two and split into 32 linear sub-buckets, so any recorded value is reported within about
+ * 3% of its actual value while the histogram stays a fixed size.
+ * 
+ * @author Chad Adams
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * The amount of bits used to split every power of two into linear sub-buckets.
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * The amount of sub-buckets per power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The values below this limit get a bucket of their own.
+	 */
+	private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+	/**
+	 * The amount of buckets needed to cover every positive long.
+	 */
+	private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	/**
+	 * The amount of values recorded in each bucket.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * The amount of values recorded.
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * The sum of all values recorded.
+	 */
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * The highest value recorded.
+	 */
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+	/**
+	 * The method that records a latency.
+	 * 
+	 * @param nanos
+	 * 		The latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Gets the value below which a percentage of the recorded latencies fall.
+	 * 
+	 * @param percentile
+	 * 		The percentile, between 0 and 100.
+	 * 
+	 * @param unit
+	 * 		The unit of the returned value.
+	 * 
+	 * @return The latency at the percentile.
+	 */
+	public long getPercentile(double percentile, TimeUnit unit) {
+		long total = count.sum();
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0));
+
+		long seen = 0;
+
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+
+			seen += counts.get(bucket);
+
+			if (seen >= target) {
+				return unit.convert(Math.min(highestValue(bucket), max.get()), TimeUnit.NANOSECONDS);
+			}
+		}
+
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the mean of the recorded latencies.
+	 * 
+	 * @param unit
+	 * 		The unit of the returned value.
+	 * 
+	 * @return The mean latency.
+	 */
+	public long getMean(TimeUnit unit) {
+		long total = count.sum();
+		return total == 0 ? 0 : unit.convert(sum.sum() / total, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the highest recorded latency.
+	 * 
+	 * @param unit
+	 * 		The unit of the returned value.
+	 * 
+	 * @return The highest latency.
+	 */
+	public long getMax(TimeUnit unit) {
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the amount of latencies recorded.
+	 * 
+	 * @return The count.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * The method that clears every recorded latency.
+	 */
+	public void reset() {
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			counts.set(bucket, 0);
+		}
+
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	/**
+	 * Gets the bucket a value is recorded in.
+	 * 
+	 * @param value
+	 * 		The non-negative value.
+	 * 
+	 * @return The bucket.
+	 */
+	private static int bucket(long value) {
+
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+		return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * Gets the highest value that is recorded in a bucket.
+	 * 
+	 * @param bucket
+	 * 		The bucket.
+	 * 
+	 * @return The highest value.
+	 */
+	private static long highestValue(int bucket) {
+
+		if (bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+
+		int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+
+		long top = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+
+		return ((top + 1) << shift) - 1;
+	}
+
+}
@@ -0,0 +1,350 @@
+package com.softgate.fs;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes an {@link AccessLayout} from read traces recorded by a {@link ReadTraceRecorder}, so that files which are
+ * requested together end up in the same compressed block and the most requested files are written first.
+ * 
+ * <p>Reads of a session that are no more than a window apart form a burst, such as the requests made during a login.
+ * Every time one file is followed by another within a burst their co-access count goes up. Clusters are then grown
+ * from the hottest file that has not been placed yet, by following the strongest co-access edge until the cluster is
+ * full or no edge is strong enough. Hot files without a strong enough edge share clusters in order of heat instead of
+ * each becoming a tiny block, and files that were never read are appended in index order.</p>
+ * 
+ * @author Chad Adams
+ */
+public class LayoutOptimizer {
+
+	/**
+	 * The default time between two reads of a session after which they no longer count as co-accessed, in milliseconds.
+	 */
+	public static final long DEFAULT_WINDOW = 2000;
+
+	/**
+	 * The default amount of payload bytes per cluster.
+	 */
+	public static final int DEFAULT_CLUSTER_SIZE = 1024 * 1024;
+
+	/**
+	 * The default amount of times two files must be read together before they are placed together.
+	 */
+	public static final int DEFAULT_MIN_CO_ACCESS = 2;
+
+	/**
+	 * The time between two reads of a session after which they no longer count as co-accessed, in milliseconds.
+	 */
+	private final long window;
+
+	/**
+	 * The amount of payload bytes after which a cluster is closed.
+	 */
+	private final int clusterSize;
+
+	/**
+	 * The amount of times two files must be read together before they are placed together.
+	 */
+	private final int minCoAccess;
+
+	/**
+	 * Creates a new {@link LayoutOptimizer} with the default settings.
+	 */
+	public LayoutOptimizer() {
+		this(DEFAULT_WINDOW, DEFAULT_CLUSTER_SIZE, DEFAULT_MIN_CO_ACCESS);
+	}
+
+	/**
+	 * Creates a new {@link LayoutOptimizer}.
+	 * 
+	 * @param window
+	 * 		The time between two reads of a session after which they no longer count as co-accessed, in milliseconds.
+	 * 
+	 * @param clusterSize
+	 * 		The amount of payload bytes after which a cluster is closed.
+	 * 
+	 * @param minCoAccess
+	 * 		The amount of times two files must be read together before they are placed together.
+	 */
+	public LayoutOptimizer(long window, int clusterSize, int minCoAccess) {
+		this.window = window;
+		this.clusterSize = clusterSize;
+		this.minCoAccess = minCoAccess;
+	}
+
+	/**
+	 * The method that computes the layout of a file system from a read trace.
+	 * 
+	 * @param fs
+	 * 		The file system to lay out.
+	 * 
+	 * @param trace
+	 * 		The trace recorded while the file system was being read.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the trace cannot be read.
+	 * 
+	 * @return The layout.
+	 */
+	public AccessLayout optimize(IndexedFileSystem fs, File trace) throws IOException {
+		Map<Long, Integer> hits = new HashMap<>();
+
+		Map<Long, Map<Long, Integer>> edges = new HashMap<>();
+
+		replay(fs, trace, (previous, key) -> {
+			hits.merge(key, 1, Integer::sum);
+
+			if (previous != null) {
+				edges.computeIfAbsent(previous, it -> new HashMap<>()).merge(key, 1, Integer::sum);
+			}
+		});
+
+		List<Long> hot = new ArrayList<>(hits.keySet());
+
+		hot.sort((first, second) -> {
+			int compare = Integer.compare(hits.get(second), hits.get(first));
+			return compare != 0 ? compare : Long.compare(first, second);
+		});
+
+		Set<Long> placed = new HashSet<>();
+
+		AccessLayout layout = AccessLayout.create();
+
+		List<Long> loose = new ArrayList<>();
+
+		long looseSize = 0;
+
+		for (long seed : hot) {
+
+			if (!placed.add(seed)) {
+				continue;
+			}
+
+			List<Long> cluster = new ArrayList<>();
+
+			cluster.add(seed);
+
+			long size = length(fs, seed);
+
+			long current = seed;
+
+			while (size < clusterSize) {
+
+				Long next = null;
+
+				int weight = minCoAccess - 1;
+
+				for (Map.Entry<Long, Integer> edge : edges.getOrDefault(current, new HashMap<>()).entrySet()) {
+					if (!placed.contains(edge.getKey()) && edge.getValue() > weight) {
+						next = edge.getKey();
+						weight = edge.getValue();
+					}
+				}
+
+				if (next == null || size + length(fs, next) > clusterSize) {
+					break;
+				}
+
+				placed.add(next);
+				cluster.add(next);
+				size += length(fs, next);
+				current = next;
+			}
+
+			if (cluster.size() > 1 || size >= clusterSize) {
+				layout.add(cluster);
+				continue;
+			}
+
+			if (!loose.isEmpty() && looseSize + size > clusterSize) {
+				layout.add(loose);
+				loose.clear();
+				looseSize = 0;
+			}
+
+			loose.add(seed);
+			looseSize += size;
+		}
+
+		layout.add(loose);
+
+		for (long[] cluster : AccessLayout.natural(fs, clusterSize).getClusters()) {
+
+			List<Long> cold = new ArrayList<>();
+
+			for (long key : cluster) {
+				if (!placed.contains(key)) {
+					cold.add(key);
+				}
+			}
+
+			layout.add(cold);
+		}
+
+		return layout;
+	}
+
+	/**
+	 * The method that replays a trace against a layout and computes the average amount of clusters, and therefore
+	 * compressed blocks, a burst of reads has to inflate.
+	 * 
+	 * @param fs
+	 * 		The file system the trace was recorded against.
+	 * 
+	 * @param trace
+	 * 		The trace to replay.
+	 * 
+	 * @param layout
+	 * 		The layout to measure.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the trace cannot be read.
+	 * 
+	 * @return The average amount of blocks per burst.
+	 */
+	public double blocksPerBurst(IndexedFileSystem fs, File trace, AccessLayout layout) throws IOException {
+		Map<Long, Integer> clusters = new HashMap<>();
+
+		for (int cluster = 0; cluster < layout.getClusters().size(); cluster++) {
+			for (long key : layout.getClusters().get(cluster)) {
+				clusters.putIfAbsent(key, cluster);
+			}
+		}
+
+		Set<Integer> touched = new HashSet<>();
+
+		long[] bursts = new long[1];
+
+		long[] blocks = new long[1];
+
+		replay(fs, trace, (previous, key) -> {
+
+			if (previous == null) {
+				bursts[0]++;
+				touched.clear();
+			}
+
+			Integer cluster = clusters.get(key);
+
+			if (cluster != null && touched.add(cluster)) {
+				blocks[0]++;
+			}
+		});
+
+		return bursts[0] == 0 ? 0 : (double) blocks[0] / bursts[0];
+	}
+
+	/**
+	 * The method that walks a trace, reporting the first read of every file within a burst along with the file that was
+	 * first read right before it in the same burst. Reads of files that no longer exist are skipped.
+	 * 
+	 * @param fs
+	 * 		The file system the trace was recorded against.
+	 * 
+	 * @param trace
+	 * 		The trace to walk.
+	 * 
+	 * @param visitor
+	 * 		The visitor to report reads to.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the trace cannot be read.
+	 */
+	private void replay(IndexedFileSystem fs, File trace, TraceVisitor visitor) throws IOException {
+		Map<Long, Burst> sessions = new HashMap<>();
+
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(trace)))) {
+			while (true) {
+
+				long session;
+
+				try {
+					session = in.readLong();
+				} catch (EOFException ex) {
+					break;
+				}
+
+				int index = in.readInt();
+				int file = in.readInt();
+				long time = in.readLong();
+
+				if (index < 0 || index >= fs.getIndexes().size() || file < 0 || file >= fs.getIndex(index).getFiles().size()) {
+					continue;
+				}
+
+				long key = AccessLayout.key(index, file);
+
+				Burst burst = sessions.computeIfAbsent(session, it -> new Burst());
+
+				if (burst.last == null || time - burst.time > window) {
+					burst.seen.clear();
+					burst.last = null;
+				}
+
+				burst.time = time;
+
+				if (burst.seen.add(key)) {
+					visitor.visit(burst.last, key);
+					burst.last = key;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the length of a file by its key.
+	 * 
+	 * @param fs
+	 * 		The file system that holds the file.
+	 * 
+	 * @param key
+	 * 		The key of the file.
+	 * 
+	 * @return The length in bytes.
+	 */
+	private static long length(IndexedFileSystem fs, long key) {
+		return fs.getIndex(AccessLayout.index(key)).getFiles().get(AccessLayout.file(key)).getLength();
+	}
+
+	/**
+	 * Represents the burst of reads a session is currently making.
+	 */
+	private static final class Burst {
+
+		/**
+		 * The files read during the burst.
+		 */
+		private final Set<Long> seen = new HashSet<>();
+
+		/**
+		 * The file first read most recently during the burst, or {@code null} if the burst has just started.
+		 */
+		private Long last;
+
+		/**
+		 * The time of the most recent read of the session.
+		 */
+		private long time;
+
+	}
+
+	/**
+	 * Represents a callback for the reads of a replayed trace.
+	 */
+	@FunctionalInterface
+	private interface TraceVisitor {
+
+		void visit(Long previous, long key);
+
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.softgate.fs;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link PayloadStore} that keeps all payloads outside of the java heap in a few large direct buffers, so the
+ * garbage collector never has to trace or copy them.
+ * 
+ * @author Chad Adams
+ */
+public class OffHeapPayloadStore extends RegionPayloadStore {
+
+	/**
+	 * The default size of a single off-heap region.
+	 */
+	public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Creates a new {@link OffHeapPayloadStore} with the default region size.
+	 */
+	public OffHeapPayloadStore() {
+		this(DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link OffHeapPayloadStore}.
+	 * 
+	 * @param regionSize
+	 * 		The size of each direct buffer this store allocates.
+	 */
+	public OffHeapPayloadStore(int regionSize) {
+		super(regionSize);
+	}
+
+	@Override
+	protected ByteBuffer allocate(int size) {
+		return ByteBuffer.allocateDirect(size);
+	}
+
+}
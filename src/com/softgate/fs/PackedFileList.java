@@ -0,0 +1,636 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+
+/**
+ * A list of {@link IndexedFile}s that stores each file as a slot in parallel primitive arrays, with the payloads kept
+ * in a {@link PayloadStore}. Names are encoded back to back in a single byte array rather than held as strings.
+ * Elements are returned as flyweight views that are created on demand, so no file objects live as long as the index
+ * itself, and a scan over the list only touches a handful of arrays.
+ * 
+ * <p>Payloads that are streamed from a {@link PayloadSource} are not copied into the store, so a file larger than
+ * memory can be added. Their source is kept by slot instead. A payload that is replaced or removed is freed in the
+ * store, so a store that reuses space never holds it for longer than the file.</p>
+ * 
+ * @author Chad Adams
+ */
+final class PackedFileList extends AbstractList<IndexedFile> implements RandomAccess {
+
+	/**
+	 * The highest length of a payload that can be read into an array.
+	 */
+	private static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The offset of a payload that is streamed from a source rather than held by the store.
+	 */
+	private static final long STREAMED = -1;
+
+	/**
+	 * The store that holds the payloads of the files in this list.
+	 */
+	private final PayloadStore store;
+
+	/**
+	 * The identifiers of the files in this list.
+	 */
+	private int[] ids = new int[8];
+
+	/**
+	 * The names of the files in this list, encoded as UTF-8 back to back. Renamed and removed files leave their old
+	 * name behind until the blob is compacted.
+	 */
+	private byte[] nameBlob = new byte[64];
+
+	/**
+	 * The position of the name of each file in the blob.
+	 */
+	private int[] nameOffsets = new int[8];
+
+	/**
+	 * The encoded length of the name of each file, or {@code -1} if the file has no name.
+	 */
+	private int[] nameLengths = new int[8];
+
+	/**
+	 * The amount of bytes written to the blob.
+	 */
+	private int blobSize;
+
+	/**
+	 * The amount of bytes in the blob that belong to files still in this list.
+	 */
+	private int liveBytes;
+
+	/**
+	 * Whether every name written to the blob is plain ASCII, which allows names to be compared without decoding them.
+	 */
+	private boolean ascii = true;
+
+	/**
+	 * The offsets of the payloads in the store, or {@link #STREAMED} for a payload streamed from a source.
+	 */
+	private long[] offsets = new long[8];
+
+	/**
+	 * The sources of the payloads that are streamed instead of held by the store, by slot.
+	 */
+	private final TreeMap<Integer, PayloadSource> sources = new TreeMap<>();
+
+	/**
+	 * The lengths of the payloads in the store.
+	 */
+	private long[] lengths = new long[8];
+
+	/**
+	 * The amount of files in this list.
+	 */
+	private int size;
+
+	/**
+	 * Creates a new {@link PackedFileList}.
+	 * 
+	 * @param store
+	 * 		The store that holds the payloads.
+	 */
+	PackedFileList(PayloadStore store) {
+		this.store = store;
+	}
+
+	@Override
+	public IndexedFile get(int slot) {
+		checkSlot(slot, size);
+		return new PackedIndexedFile(this, slot);
+	}
+
+	@Override
+	public IndexedFile set(int slot, IndexedFile file) {
+		checkSlot(slot, size);
+
+		IndexedFile previous = detach(slot);
+
+		put(slot, file);
+
+		return previous;
+	}
+
+	@Override
+	public void add(int slot, IndexedFile file) {
+		checkSlot(slot, size + 1);
+
+		long length = file.getLength();
+
+		PayloadSource source = sourceOf(file);
+
+		insert(slot, file.getHeader().getId(), file.getHeader().getName(), source == null ? store(file) : STREAMED, length);
+
+		if (source != null) {
+			sources.put(slot, source);
+		}
+	}
+
+	/**
+	 * Gets the source a file added to this list is streamed from. A payload that is streamed, or too large for an array
+	 * and held by another store, is kept as a source rather than read.
+	 * 
+	 * @param file
+	 * 		The file.
+	 * 
+	 * @return The source, or {@code null} if the payload is written to the store of this list.
+	 */
+	private PayloadSource sourceOf(IndexedFile file) {
+
+		if (!(file instanceof PackedIndexedFile)) {
+			return file.getSource();
+		}
+
+		PackedFileList list = ((PackedIndexedFile) file).getList();
+
+		int slot = ((PackedIndexedFile) file).getSlot();
+
+		if (list.offsets[slot] == STREAMED) {
+			return list.sources.get(slot);
+		}
+
+		if (list.store != store && list.lengths[slot] > MAX_ARRAY_LENGTH) {
+			PayloadStore other = list.store;
+			long offset = list.offsets[slot];
+			long length = list.lengths[slot];
+			return () -> other.open(offset, length);
+		}
+
+		return null;
+	}
+
+	/**
+	 * The method that stores the payload of a file for a slot of this list. A payload held by the store of this list
+	 * is shared if the store never reuses its space, and copied otherwise, so that freeing one slot cannot overwrite
+	 * another.
+	 * 
+	 * @param file
+	 * 		The file whose payload is stored.
+	 * 
+	 * @return The offset of the payload in the store.
+	 */
+	private long store(IndexedFile file) {
+
+		if (file instanceof PackedIndexedFile) {
+			PackedFileList list = ((PackedIndexedFile) file).getList();
+
+			long offset = list.offsets[((PackedIndexedFile) file).getSlot()];
+
+			if (list.store == store && !store.isReclaimable(offset)) {
+				return offset;
+			}
+		}
+
+		return store.write(file.getPayload());
+	}
+
+	/**
+	 * Gets the source the payload of a slot is streamed from.
+	 * 
+	 * @param slot
+	 * 		The slot.
+	 * 
+	 * @return The source, or {@code null} if the payload is held by the store.
+	 */
+	private PayloadSource source(int slot) {
+		return sources.get(slot);
+	}
+
+	/**
+	 * The method that frees the payload of a slot once the slot no longer uses it, dropping its source if it is
+	 * streamed.
+	 * 
+	 * @param slot
+	 * 		The slot.
+	 */
+	private void releasePayload(int slot) {
+		if (offsets[slot] == STREAMED) {
+			sources.remove(slot);
+		} else {
+			store.free(offsets[slot], lengths[slot]);
+		}
+	}
+
+	/**
+	 * The method that moves the sources of every slot from a slot onwards, after slots were inserted or removed.
+	 * 
+	 * @param from
+	 * 		The first slot to move.
+	 * 
+	 * @param distance
+	 * 		The amount of slots to move by.
+	 */
+	private void shiftSources(int from, int distance) {
+
+		if (sources.isEmpty() || sources.lastKey() < from) {
+			return;
+		}
+
+		TreeMap<Integer, PayloadSource> moved = new TreeMap<>(sources.tailMap(from));
+
+		sources.tailMap(from).clear();
+
+		moved.forEach((slot, source) -> sources.put(slot + distance, source));
+	}
+
+	/**
+	 * The method that appends a file whose payload is already held by the store.
+	 * 
+	 * @param id
+	 * 		The id of the file.
+	 * 
+	 * @param name
+	 * 		The name of the file.
+	 * 
+	 * @param offset
+	 * 		The offset of the payload in the store.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 */
+	void append(int id, String name, long offset, long length) {
+		insert(size, id, name, offset, length);
+	}
+
+	/**
+	 * The method that inserts a slot, shifting every slot after it to the right.
+	 * 
+	 * @param slot
+	 * 		The slot to insert at.
+	 * 
+	 * @param id
+	 * 		The id of the file.
+	 * 
+	 * @param name
+	 * 		The name of the file.
+	 * 
+	 * @param offset
+	 * 		The offset of the payload in the store.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 */
+	private void insert(int slot, int id, String name, long offset, long length) {
+
+		if (size == ids.length) {
+			int capacity = ids.length * 2;
+			ids = Arrays.copyOf(ids, capacity);
+			nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+			nameLengths = Arrays.copyOf(nameLengths, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+
+		int moved = size - slot;
+
+		if (moved > 0) {
+			System.arraycopy(ids, slot, ids, slot + 1, moved);
+			System.arraycopy(nameOffsets, slot, nameOffsets, slot + 1, moved);
+			System.arraycopy(nameLengths, slot, nameLengths, slot + 1, moved);
+			System.arraycopy(offsets, slot, offsets, slot + 1, moved);
+			System.arraycopy(lengths, slot, lengths, slot + 1, moved);
+			shiftSources(slot, 1);
+		}
+
+		// counted before the name is written, so a compaction it triggers also keeps the name of the last shifted slot
+		size++;
+
+		ids[slot] = id;
+		writeName(slot, name);
+		offsets[slot] = offset;
+		lengths[slot] = length;
+
+		modCount++;
+	}
+
+	@Override
+	public IndexedFile remove(int slot) {
+		checkSlot(slot, size);
+
+		IndexedFile previous = detach(slot);
+
+		releaseName(slot);
+		releasePayload(slot);
+
+		int moved = size - slot - 1;
+
+		if (moved > 0) {
+			System.arraycopy(ids, slot + 1, ids, slot, moved);
+			System.arraycopy(nameOffsets, slot + 1, nameOffsets, slot, moved);
+			System.arraycopy(nameLengths, slot + 1, nameLengths, slot, moved);
+			System.arraycopy(offsets, slot + 1, offsets, slot, moved);
+			System.arraycopy(lengths, slot + 1, lengths, slot, moved);
+			shiftSources(slot + 1, -1);
+		}
+
+		size--;
+		modCount++;
+
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		for (int slot = 0; slot < size; slot++) {
+			releasePayload(slot);
+		}
+
+		blobSize = 0;
+		liveBytes = 0;
+		ascii = true;
+		sources.clear();
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The method that overwrites a slot with the contents of a file.
+	 * 
+	 * @param slot
+	 * 		The slot to overwrite.
+	 * 
+	 * @param file
+	 * 		The file to copy.
+	 */
+	private void put(int slot, IndexedFile file) {
+		long length = file.getLength();
+		PayloadSource source = sourceOf(file);
+		long offset = source == null ? store(file) : STREAMED;
+
+		ids[slot] = file.getHeader().getId();
+		setName(slot, file.getHeader().getName());
+		releasePayload(slot);
+		offsets[slot] = offset;
+		lengths[slot] = length;
+
+		if (source != null) {
+			sources.put(slot, source);
+		}
+	}
+
+	/**
+	 * The method that copies a slot into a heap-based {@link IndexedFile} that is independent of this list.
+	 * 
+	 * @param slot
+	 * 		The slot to copy.
+	 * 
+	 * @return The copied file.
+	 */
+	IndexedFile detach(int slot) {
+		IndexedFileHeader header = new IndexedFileHeader(ids[slot], getName(slot));
+		return offsets[slot] == STREAMED ? new IndexedFile(header, lengths[slot], source(slot)) : new IndexedFile(header, getPayload(slot));
+	}
+
+	int getId(int slot) {
+		return ids[slot];
+	}
+
+	void setId(int slot, int id) {
+		ids[slot] = id;
+	}
+
+	String getName(int slot) {
+		int length = nameLengths[slot];
+		return length < 0 ? null : new String(nameBlob, nameOffsets[slot], length, StandardCharsets.UTF_8);
+	}
+
+	void setName(int slot, String name) {
+		releaseName(slot);
+		writeName(slot, name);
+	}
+
+	/**
+	 * The method that finds the first file with a name, ignoring case, without creating a string for every file.
+	 * 
+	 * @param name
+	 * 		The name to find.
+	 * 
+	 * @return The slot of the file, or {@code -1} if no file has the name.
+	 */
+	int indexOf(String name) {
+
+		if (name == null) {
+			return -1;
+		}
+
+		byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+
+		if (!ascii || !isAscii(encoded)) {
+			for (int slot = 0; slot < size; slot++) {
+				if (name.equalsIgnoreCase(getName(slot))) {
+					return slot;
+				}
+			}
+
+			return -1;
+		}
+
+		for (int slot = 0; slot < size; slot++) {
+
+			if (nameLengths[slot] != encoded.length) {
+				continue;
+			}
+
+			int offset = nameOffsets[slot];
+
+			int i = 0;
+
+			while (i < encoded.length && lowerCase(nameBlob[offset + i]) == lowerCase(encoded[i])) {
+				i++;
+			}
+
+			if (i == encoded.length) {
+				return slot;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * The method that writes the name of a slot to the end of the blob.
+	 * 
+	 * @param slot
+	 * 		The slot.
+	 * 
+	 * @param name
+	 * 		The name, or {@code null} if the file has no name.
+	 */
+	private void writeName(int slot, String name) {
+
+		nameOffsets[slot] = 0;
+		nameLengths[slot] = -1;
+
+		if (name == null) {
+			return;
+		}
+
+		byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+
+		if (blobSize + encoded.length > nameBlob.length) {
+
+			if (liveBytes + encoded.length <= blobSize / 2) {
+				compactNames();
+			}
+
+			if (blobSize + encoded.length > nameBlob.length) {
+				nameBlob = Arrays.copyOf(nameBlob, Math.max(nameBlob.length * 2, blobSize + encoded.length));
+			}
+		}
+
+		System.arraycopy(encoded, 0, nameBlob, blobSize, encoded.length);
+
+		nameOffsets[slot] = blobSize;
+		nameLengths[slot] = encoded.length;
+
+		blobSize += encoded.length;
+		liveBytes += encoded.length;
+		ascii &= isAscii(encoded);
+	}
+
+	/**
+	 * The method that marks the name of a slot as no longer used.
+	 * 
+	 * @param slot
+	 * 		The slot.
+	 */
+	private void releaseName(int slot) {
+		if (nameLengths[slot] > 0) {
+			liveBytes -= nameLengths[slot];
+		}
+	}
+
+	/**
+	 * The method that rewrites the blob with only the names of the files still in this list.
+	 */
+	private void compactNames() {
+		byte[] blob = new byte[nameBlob.length];
+
+		int position = 0;
+
+		for (int slot = 0; slot < size; slot++) {
+
+			int length = nameLengths[slot];
+
+			if (length > 0) {
+				System.arraycopy(nameBlob, nameOffsets[slot], blob, position, length);
+				nameOffsets[slot] = position;
+				position += length;
+			}
+		}
+
+		nameBlob = blob;
+		blobSize = position;
+	}
+
+	/**
+	 * The method that checks whether encoded bytes are plain ASCII.
+	 * 
+	 * @param encoded
+	 * 		The bytes.
+	 * 
+	 * @return {@code true} if no byte has its high bit set.
+	 */
+	private static boolean isAscii(byte[] encoded) {
+		for (byte value : encoded) {
+			if (value < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the lower case of an ASCII character.
+	 * 
+	 * @param value
+	 * 		The character.
+	 * 
+	 * @return The lower case character.
+	 */
+	private static int lowerCase(byte value) {
+		return value >= 'A' && value <= 'Z' ? value + ('a' - 'A') : value;
+	}
+
+	byte[] getPayload(int slot) {
+
+		if (lengths[slot] > MAX_ARRAY_LENGTH) {
+			throw new IllegalStateException(String.format("file=[%d, %s] is too large to read into memory: %d", ids[slot], getName(slot), lengths[slot]));
+		}
+
+		if (offsets[slot] == STREAMED) {
+			return detach(slot).getPayload();
+		}
+
+		return store.read(offsets[slot], (int) lengths[slot]);
+	}
+
+	InputStream openStream(int slot) throws IOException {
+		return offsets[slot] == STREAMED ? source(slot).open() : store.open(offsets[slot], lengths[slot]);
+	}
+
+	StoredPayload locate(int slot) {
+		return offsets[slot] != STREAMED && store instanceof BlockPayloadStore ? ((BlockPayloadStore) store).locate(offsets[slot], lengths[slot]) : null;
+	}
+
+	int prefetch(int slot) {
+		return offsets[slot] != STREAMED && store instanceof BlockPayloadStore ? ((BlockPayloadStore) store).prefetch(offsets[slot], lengths[slot]) : 0;
+	}
+
+	long getLength(int slot) {
+		return lengths[slot];
+	}
+
+	void setPayload(int slot, byte[] payload) {
+		long offset = store.write(payload);
+		releasePayload(slot);
+		offsets[slot] = offset;
+		lengths[slot] = payload.length;
+	}
+
+	void setPayload(int slot, long length, PayloadSource source) {
+		releasePayload(slot);
+		offsets[slot] = STREAMED;
+		lengths[slot] = length;
+		sources.put(slot, source);
+	}
+
+	/**
+	 * Gets the store that holds the payloads of this list.
+	 * 
+	 * @return The payload store.
+	 */
+	PayloadStore getStore() {
+		return store;
+	}
+
+	/**
+	 * The method that makes sure a slot is within range.
+	 * 
+	 * @param slot
+	 * 		The slot to check.
+	 * 
+	 * @param bound
+	 * 		The exclusive upper bound.
+	 */
+	private static void checkSlot(int slot, int bound) {
+		if (slot < 0 || slot >= bound) {
+			throw new IndexOutOfBoundsException(String.format("slot=%d is out of range: %d", slot, bound));
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A flyweight {@link IndexedFile} that reads and writes through to a slot in a {@link PackedFileList}. A view is only
+ * valid until a file is inserted into or removed from the list that created it.
+ * 
+ * @author Chad Adams
+ */
+final class PackedIndexedFile extends IndexedFile {
+
+	/**
+	 * The list that owns the slot.
+	 */
+	private final PackedFileList list;
+
+	/**
+	 * The slot this view points at.
+	 */
+	private final int slot;
+
+	/**
+	 * Creates a new {@link PackedIndexedFile}.
+	 * 
+	 * @param list
+	 * 		The list that owns the slot.
+	 * 
+	 * @param slot
+	 * 		The slot this view points at.
+	 */
+	PackedIndexedFile(PackedFileList list, int slot) {
+		super(null, null);
+		this.list = list;
+		this.slot = slot;
+	}
+
+	@Override
+	public IndexedFile copy() {
+		return list.detach(slot);
+	}
+
+	@Override
+	public byte[] getPayload() {
+		return list.getPayload(slot);
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return list.openStream(slot);
+	}
+
+	@Override
+	public long getLength() {
+		return list.getLength(slot);
+	}
+
+	@Override
+	public void setPayload(byte[] payload) {
+		list.setPayload(slot, payload);
+	}
+
+	@Override
+	public void setPayload(long length, PayloadSource source) {
+		list.setPayload(slot, length, source);
+	}
+
+	@Override
+	public IndexedFileHeader getHeader() {
+		return new IndexedFileHeader(list.getId(slot), list.getName(slot)) {
+
+			@Override
+			public int getId() {
+				return list.getId(slot);
+			}
+
+			@Override
+			public void setId(int id) {
+				list.setId(slot, id);
+			}
+
+			@Override
+			public String getName() {
+				return list.getName(slot);
+			}
+
+			@Override
+			public void setName(String name) {
+				list.setName(slot, name);
+			}
+
+		};
+	}
+
+	@Override
+	public void setHeader(IndexedFileHeader header) {
+		list.setId(slot, header.getId());
+		list.setName(slot, header.getName());
+	}
+
+	PackedFileList getList() {
+		return list;
+	}
+
+	int getSlot() {
+		return slot;
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Represents a payload that is streamed from somewhere else, such as a file on disk, every time it is read, so that
+ * it never has to be held in memory as a whole.
+ * 
+ * @author Chad Adams
+ */
+@FunctionalInterface
+public interface PayloadSource {
+
+	/**
+	 * The method that opens a new stream of the payload.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the payload cannot be opened.
+	 * 
+	 * @return The stream, which the caller closes.
+	 */
+	InputStream open() throws IOException;
+
+}
@@ -0,0 +1,95 @@
+package com.softgate.fs;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Represents a region of memory that holds the payloads of {@link IndexedFile}s, addressed by offset and length.
+ * 
+ * @author Chad Adams
+ */
+public interface PayloadStore extends Closeable {
+
+	/**
+	 * The method that appends a payload to this store.
+	 * 
+	 * @param data
+	 * 		The data to append.
+	 * 
+	 * @return The offset the data was written at.
+	 */
+	long write(byte[] data);
+
+	/**
+	 * The method that copies a payload out of this store.
+	 * 
+	 * @param offset
+	 * 		The offset the payload was written at.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @return The copied payload.
+	 */
+	byte[] read(long offset, int length);
+
+	/**
+	 * The method that opens a stream of a payload in this store. Stores that can hold payloads larger than an array
+	 * stream them without copying them into memory as a whole.
+	 * 
+	 * @param offset
+	 * 		The offset the payload was written at.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the payload cannot be read.
+	 * 
+	 * @return The stream of the payload.
+	 */
+	default InputStream open(long offset, long length) throws IOException {
+
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException(String.format("length=%d does not fit in this store.", length));
+		}
+
+		return new ByteArrayInputStream(read(offset, (int) length));
+	}
+
+	/**
+	 * The method that marks a payload as no longer used, so that a later write can reuse its space. Stores that never
+	 * reuse space ignore it.
+	 * 
+	 * @param offset
+	 * 		The offset the payload was written at.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 */
+	default void free(long offset, long length) {
+
+	}
+
+	/**
+	 * The method that checks whether the space of a payload is reused once it is freed, in which case the payload must
+	 * not be shared by more than one file.
+	 * 
+	 * @param offset
+	 * 		The offset the payload was written at.
+	 * 
+	 * @return {@code true} if freeing the payload lets a later write overwrite it.
+	 */
+	default boolean isReclaimable(long offset) {
+		return false;
+	}
+
+	/**
+	 * Gets the amount of bytes that have been written to this store.
+	 * 
+	 * @return The size in bytes.
+	 */
+	long size();
+
+}
@@ -0,0 +1,410 @@
+package com.softgate.fs;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warms the block cache of an {@link IndexedFileSystem} opened from a block or sharded archive in the background, so
+ * that the files a client is about to ask for have already been inflated when it does. After every read the files that
+ * follow it in its {@link Index} are prefetched, along with the files registered as hints for it.
+ * 
+ * <p>A prefetcher is notified of reads as a {@link FileSystemListener}, so it is installed with
+ * {@link IndexedFileSystem#setListener(FileSystemListener)}, composed with any other listener through
+ * {@link FileSystemListener#compose(FileSystemListener...)}. It never makes a read wait: prefetches run on a small pool
+ * of low priority threads, are limited to a share of one core, and are dropped instead of queued when the pool falls
+ * behind or the machine is already busy.</p>
+ * 
+ * @author Chad Adams
+ */
+public final class Prefetcher implements FileSystemListener, Closeable {
+
+	/**
+	 * The default share of one core that prefetching may use.
+	 */
+	public static final double DEFAULT_CPU_BUDGET = 0.25;
+
+	/**
+	 * The highest amount of prefetches waiting for a thread.
+	 */
+	private static final int QUEUE_SIZE = 64;
+
+	/**
+	 * The window the cpu budget is measured over, in nanoseconds. Unused budget is never saved for longer than this.
+	 */
+	private static final long BUDGET_WINDOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * The time the system load is cached for, in nanoseconds.
+	 */
+	private static final long LOAD_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * The bean that measures the cpu time of the prefetch threads.
+	 */
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * The file system whose cache is warmed.
+	 */
+	private final IndexedFileSystem fs;
+
+	/**
+	 * The amount of files after a read that are prefetched.
+	 */
+	private final int readAhead;
+
+	/**
+	 * The share of one core that prefetching may use.
+	 */
+	private final double cpuBudget;
+
+	/**
+	 * The threads that run prefetches.
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * The keys of the files that are queued or being prefetched.
+	 */
+	private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The keys of the files to prefetch after a file has been read, keyed by the key of that file.
+	 */
+	private final Map<Long, long[]> hints = new ConcurrentHashMap<>();
+
+	/**
+	 * The amount of blocks inflated by prefetches.
+	 */
+	private final LongAdder prefetched = new LongAdder();
+
+	/**
+	 * The amount of prefetches skipped because of the budget, the load or a full queue.
+	 */
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * The cpu time prefetches may still use, in nanoseconds.
+	 */
+	private long tokens;
+
+	/**
+	 * The time the tokens were last refilled.
+	 */
+	private long refilled = System.nanoTime();
+
+	/**
+	 * Whether the system was too busy to prefetch when the load was last checked.
+	 */
+	private volatile boolean busy;
+
+	/**
+	 * The time the system load was last checked.
+	 */
+	private volatile long loadChecked;
+
+	/**
+	 * The private constructor.
+	 * 
+	 * @param fs
+	 * 		The file system whose cache is warmed.
+	 * 
+	 * @param readAhead
+	 * 		The amount of files after a read that are prefetched.
+	 * 
+	 * @param threads
+	 * 		The amount of threads that run prefetches.
+	 * 
+	 * @param cpuBudget
+	 * 		The share of one core that prefetching may use.
+	 */
+	private Prefetcher(IndexedFileSystem fs, int readAhead, int threads, double cpuBudget) {
+		this.fs = fs;
+		this.readAhead = readAhead;
+		this.cpuBudget = cpuBudget;
+		this.tokens = (long) (BUDGET_WINDOW * cpuBudget);
+
+		AtomicInteger count = new AtomicInteger();
+
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+			Thread thread = new Thread(runnable, "ibfs-prefetch-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}, (runnable, executor) -> {
+			pending.remove(((Task) runnable).key);
+			dropped.increment();
+		});
+	}
+
+	/**
+	 * The method that creates a prefetcher that uses one thread and {@link #DEFAULT_CPU_BUDGET}.
+	 * 
+	 * @param fs
+	 * 		The file system whose cache is warmed.
+	 * 
+	 * @param readAhead
+	 * 		The amount of files after a read that are prefetched, or 0 to only prefetch hints.
+	 * 
+	 * @return The created prefetcher, which still has to be installed as a listener of the file system.
+	 */
+	public static Prefetcher create(IndexedFileSystem fs, int readAhead) {
+		return create(fs, readAhead, 1, DEFAULT_CPU_BUDGET);
+	}
+
+	/**
+	 * The method that creates a prefetcher.
+	 * 
+	 * @param fs
+	 * 		The file system whose cache is warmed.
+	 * 
+	 * @param readAhead
+	 * 		The amount of files after a read that are prefetched, or 0 to only prefetch hints.
+	 * 
+	 * @param threads
+	 * 		The amount of threads that run prefetches.
+	 * 
+	 * @param cpuBudget
+	 * 		The share of one core that prefetching may use, for instance 0.5 for half a core.
+	 * 
+	 * @return The created prefetcher, which still has to be installed as a listener of the file system.
+	 */
+	public static Prefetcher create(IndexedFileSystem fs, int readAhead, int threads, double cpuBudget) {
+
+		if (readAhead < 0) {
+			throw new IllegalArgumentException(String.format("readAhead=%d cannot be negative.", readAhead));
+		}
+
+		if (threads < 1) {
+			throw new IllegalArgumentException(String.format("threads=%d must be at least 1.", threads));
+		}
+
+		if (!(cpuBudget > 0)) {
+			throw new IllegalArgumentException(String.format("cpuBudget=%s must be positive.", cpuBudget));
+		}
+
+		return new Prefetcher(fs, readAhead, threads, cpuBudget);
+	}
+
+	/**
+	 * The method that registers files to prefetch whenever a file has been read, for instance the models of a map
+	 * region. Hints for the same file are added to the ones already registered.
+	 * 
+	 * @param index
+	 * 		The id of the index of the file that is read.
+	 * 
+	 * @param file
+	 * 		The slot of the file that is read in its index.
+	 * 
+	 * @param targetIndex
+	 * 		The id of the index of the files to prefetch.
+	 * 
+	 * @param targetFiles
+	 * 		The slots of the files to prefetch in the target index.
+	 * 
+	 * @return This prefetcher.
+	 */
+	public Prefetcher hint(int index, int file, int targetIndex, int... targetFiles) {
+		long[] targets = new long[targetFiles.length];
+
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = AccessLayout.key(targetIndex, targetFiles[i]);
+		}
+
+		hints.merge(AccessLayout.key(index, file), targets, (previous, added) -> {
+			long[] merged = new long[previous.length + added.length];
+			System.arraycopy(previous, 0, merged, 0, previous.length);
+			System.arraycopy(added, 0, merged, previous.length, added.length);
+			return merged;
+		});
+
+		return this;
+	}
+
+	/**
+	 * The method that removes the hints registered for a file.
+	 * 
+	 * @param index
+	 * 		The id of the index of the file.
+	 * 
+	 * @param file
+	 * 		The slot of the file in its index.
+	 */
+	public void clearHints(int index, int file) {
+		hints.remove(AccessLayout.key(index, file));
+	}
+
+	@Override
+	public void onRead(int index, int file, int length, long nanos) {
+
+		for (int next = 1; next <= readAhead; next++) {
+			prefetch(index, file + next);
+		}
+
+		long[] targets = hints.get(AccessLayout.key(index, file));
+
+		if (targets != null) {
+			for (long target : targets) {
+				prefetch(AccessLayout.index(target), AccessLayout.file(target));
+			}
+		}
+	}
+
+	/**
+	 * The method that asks for a file to be prefetched. The request is dropped if the file is already being
+	 * prefetched, the budget is used up, the system is busy or too many prefetches are waiting.
+	 * 
+	 * @param index
+	 * 		The id of the index of the file.
+	 * 
+	 * @param file
+	 * 		The slot of the file in its index.
+	 */
+	public void prefetch(int index, int file) {
+
+		if (index < 0 || file < 0 || executor.isShutdown()) {
+			return;
+		}
+
+		long key = AccessLayout.key(index, file);
+
+		if (pending.contains(key)) {
+			return;
+		}
+
+		if (busy() || !acquire()) {
+			dropped.increment();
+			return;
+		}
+
+		if (pending.add(key)) {
+			executor.execute(new Task(key));
+		}
+	}
+
+	/**
+	 * The method that checks whether the system is too busy to prefetch, which is the case while its load average is at
+	 * least the amount of processors.
+	 * 
+	 * @return {@code true} if prefetching should back off.
+	 */
+	private boolean busy() {
+		long now = System.nanoTime();
+
+		if (now - loadChecked > LOAD_INTERVAL) {
+			OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+			busy = os.getSystemLoadAverage() >= os.getAvailableProcessors();
+			loadChecked = now;
+		}
+
+		return busy;
+	}
+
+	/**
+	 * The method that checks whether the cpu budget has time left, refilling it for the time that has passed.
+	 * 
+	 * @return {@code true} if a prefetch may start.
+	 */
+	private synchronized boolean acquire() {
+		long now = System.nanoTime();
+
+		tokens = Math.min((long) (BUDGET_WINDOW * cpuBudget), tokens + (long) ((now - refilled) * cpuBudget));
+
+		refilled = now;
+
+		return tokens > 0;
+	}
+
+	/**
+	 * The method that charges the cpu time a prefetch took to the cpu budget.
+	 * 
+	 * @param nanos
+	 * 		The time in nanoseconds.
+	 */
+	private synchronized void charge(long nanos) {
+		tokens -= nanos;
+	}
+
+	/**
+	 * Gets the amount of blocks that were inflated by prefetches.
+	 * 
+	 * @return The amount of blocks.
+	 */
+	public long getPrefetchedBlocks() {
+		return prefetched.sum();
+	}
+
+	/**
+	 * Gets the amount of prefetches that were skipped because of the budget, the load or a full queue.
+	 * 
+	 * @return The amount of prefetches.
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		pending.clear();
+	}
+
+	/**
+	 * Represents a prefetch of a single file.
+	 */
+	private final class Task implements Runnable {
+
+		/**
+		 * The key of the file to prefetch.
+		 */
+		private final long key;
+
+		Task(long key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			// fall back to the wall time when the virtual machine can't measure the cpu time of a thread
+			boolean cpuTime = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+
+			long start = cpuTime ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+
+			try {
+				List<Index> indexes = fs.getIndexes();
+
+				int index = AccessLayout.index(key);
+
+				int file = AccessLayout.file(key);
+
+				if (index < indexes.size()) {
+
+					List<IndexedFile> files = indexes.get(index).getFiles();
+
+					if (files instanceof PackedFileList && file < files.size()) {
+						prefetched.add(((PackedFileList) files).prefetch(file));
+					}
+
+				}
+			} catch (RuntimeException ex) {
+				// the file was removed or the archive was closed, a prefetch is only a hint
+			} finally {
+				pending.remove(key);
+				// a prefetch waiting on the disk or a lock uses no cpu, so only the time it ran is charged
+				charge((cpuTime ? THREADS.getCurrentThreadCpuTime() : System.nanoTime()) - start);
+			}
+		}
+
+	}
+
+}
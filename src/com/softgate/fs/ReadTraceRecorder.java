@@ -0,0 +1,165 @@
+package com.softgate.fs;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link FileSystemListener} that appends every read to a trace file, which {@link LayoutOptimizer} uses to
+ * find the files that are requested together.
+ * 
+ * <p>Each record is a session, the position of the index, the slot of the file and the time in milliseconds. Reads
+ * reported through the listener belong to the session bound to the reading thread with {@link #setSession(long)},
+ * such as the connection a server is reading for, or to the reading thread itself when none is bound. Records are
+ * written to the file every {@link #FLUSH_RECORDS} records and at least every {@link #FLUSH_INTERVAL} milliseconds
+ * while reads are recorded, so a trace can be read while the server is still running.</p>
+ * 
+ * @author Chad Adams
+ */
+public class ReadTraceRecorder implements FileSystemListener, Closeable, Flushable {
+
+	/**
+	 * The amount of records buffered before they are written to the file.
+	 */
+	public static final int FLUSH_RECORDS = 1024;
+
+	/**
+	 * The longest time in milliseconds a record stays buffered while other reads are recorded.
+	 */
+	public static final long FLUSH_INTERVAL = 1000;
+
+	/**
+	 * The size of a record in bytes.
+	 */
+	private static final int RECORD_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+	/**
+	 * The session bound to each reading thread, or {@code null} to use the thread itself.
+	 */
+	private static final ThreadLocal<Long> SESSION = new ThreadLocal<>();
+
+	/**
+	 * The stream the trace is written to.
+	 */
+	private final DataOutputStream out;
+
+	/**
+	 * The amount of records written since the last flush.
+	 */
+	private int buffered;
+
+	/**
+	 * The time in nanoseconds of the last flush.
+	 */
+	private long flushed = System.nanoTime();
+
+	/**
+	 * The exception that stopped the recording, or {@code null} if recording is healthy.
+	 */
+	private IOException failure;
+
+	/**
+	 * Creates a new {@link ReadTraceRecorder} that appends to a trace file.
+	 * 
+	 * @param file
+	 * 		The trace file.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the trace file cannot be opened.
+	 */
+	public ReadTraceRecorder(File file) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), RECORD_SIZE * FLUSH_RECORDS));
+	}
+
+	/**
+	 * The method that binds a session to the current thread, so the reads it makes until
+	 * {@link #clearSession()} is called are recorded for that session instead of for the thread.
+	 * 
+	 * @param session
+	 * 		The session, such as the id of the connection the thread is reading for.
+	 */
+	public static void setSession(long session) {
+		SESSION.set(session);
+	}
+
+	/**
+	 * The method that unbinds the session of the current thread, so its reads are recorded for the thread again.
+	 */
+	public static void clearSession() {
+		SESSION.remove();
+	}
+
+	@Override
+	public void onRead(int index, int file, int length, long nanos) {
+		Long session = SESSION.get();
+
+		record(session == null ? Thread.currentThread().getId() : session, index, file);
+	}
+
+	/**
+	 * The method that records a read. A failure to write stops the recording instead of failing the read, and is
+	 * thrown when the recorder is closed.
+	 * 
+	 * @param session
+	 * 		The session the read belongs to.
+	 * 
+	 * @param index
+	 * 		The position of the index that was read from.
+	 * 
+	 * @param file
+	 * 		The slot of the file that was read.
+	 */
+	public synchronized void record(long session, int index, int file) {
+
+		if (failure != null) {
+			return;
+		}
+
+		try {
+			out.writeLong(session);
+			out.writeInt(index);
+			out.writeInt(file);
+			out.writeLong(System.currentTimeMillis());
+
+			if (++buffered >= FLUSH_RECORDS || System.nanoTime() - flushed >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL)) {
+				flush();
+			}
+		} catch (IOException ex) {
+			failure = ex;
+		}
+	}
+
+	/**
+	 * The method that writes the buffered records to the trace file.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the records cannot be written, or the exception that stopped the recording.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		out.flush();
+
+		buffered = 0;
+
+		flushed = System.nanoTime();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+package com.softgate.fs;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A {@link PayloadStore} that packs payloads back to back into a few large fixed-size buffers, so the amount of objects
+ * it holds does not grow with the amount of payloads.
+ * 
+ * <p>The space of a freed payload is reused by later writes, which take the smallest free range they fit in and only
+ * append when none fits. Free ranges next to each other are merged, and regions past the last payload in use are
+ * released, so replacing and removing files does not grow the store for the lifetime of the file system.</p>
+ * 
+ * @author Chad Adams
+ */
+public abstract class RegionPayloadStore implements PayloadStore {
+
+	/**
+	 * The regions that have been allocated so far.
+	 */
+	private final List<ByteBuffer> regions = new ArrayList<>();
+
+	/**
+	 * The size of each region.
+	 */
+	private final int regionSize;
+
+	/**
+	 * The end of the last payload in use.
+	 */
+	private long size;
+
+	/**
+	 * The length of every free range below the size of this store, by offset.
+	 */
+	private final TreeMap<Long, Long> holes = new TreeMap<>();
+
+	/**
+	 * Every free range below the size of this store as its offset and length, ordered by length and then offset so
+	 * that a write finds the smallest range it fits in.
+	 */
+	private final TreeSet<long[]> fits = new TreeSet<>((first, second) -> first[1] != second[1] ? Long.compare(first[1], second[1]) : Long.compare(first[0], second[0]));
+
+	/**
+	 * Creates a new {@link RegionPayloadStore}.
+	 * 
+	 * @param regionSize
+	 * 		The size of each buffer this store allocates.
+	 */
+	protected RegionPayloadStore(int regionSize) {
+
+		if (regionSize <= 0) {
+			throw new IllegalArgumentException(String.format("regionSize=%d must be positive.", regionSize));
+		}
+
+		this.regionSize = regionSize;
+	}
+
+	@Override
+	public synchronized long write(byte[] data) {
+
+		if (data.length == 0) {
+			return 0;
+		}
+
+		long[] hole = fits.ceiling(new long[] { -1, data.length });
+
+		long offset;
+
+		if (hole == null) {
+			offset = size;
+			size += data.length;
+		} else {
+			removeHole(hole[0], hole[1]);
+
+			offset = hole[0];
+
+			if (hole[1] > data.length) {
+				addHole(offset + data.length, hole[1] - data.length);
+			}
+		}
+
+		int written = 0;
+
+		while (written < data.length) {
+
+			int region = (int) ((offset + written) / regionSize);
+
+			if (region == regions.size()) {
+				regions.add(allocate(regionSize));
+			}
+
+			ByteBuffer buffer = regions.get(region).duplicate();
+
+			buffer.position((int) ((offset + written) % regionSize));
+
+			int length = Math.min(buffer.remaining(), data.length - written);
+
+			buffer.put(data, written, length);
+
+			written += length;
+		}
+
+		return offset;
+	}
+
+	@Override
+	public synchronized void free(long offset, long length) {
+
+		if (length == 0) {
+			return;
+		}
+
+		if (offset < 0 || length < 0 || offset + length > size) {
+			throw new IllegalArgumentException(String.format("offset=%d length=%d is out of range: %d", offset, length, size));
+		}
+
+		Map.Entry<Long, Long> before = holes.floorEntry(offset);
+
+		Map.Entry<Long, Long> after = holes.ceilingEntry(offset);
+
+		if (before != null && before.getKey() + before.getValue() > offset || after != null && after.getKey() < offset + length) {
+			throw new IllegalArgumentException(String.format("offset=%d length=%d is already free.", offset, length));
+		}
+
+		if (before != null && before.getKey() + before.getValue() == offset) {
+			removeHole(before.getKey(), before.getValue());
+			offset = before.getKey();
+			length += before.getValue();
+		}
+
+		if (after != null && after.getKey() == offset + length) {
+			removeHole(after.getKey(), after.getValue());
+			length += after.getValue();
+		}
+
+		if (offset + length < size) {
+			addHole(offset, length);
+			return;
+		}
+
+		size = offset;
+
+		int used = (int) ((size + regionSize - 1) / regionSize);
+
+		while (regions.size() > used) {
+			regions.remove(regions.size() - 1);
+		}
+	}
+
+	@Override
+	public boolean isReclaimable(long offset) {
+		return true;
+	}
+
+	/**
+	 * The method that adds a free range.
+	 * 
+	 * @param offset
+	 * 		The offset of the range.
+	 * 
+	 * @param length
+	 * 		The length of the range.
+	 */
+	private void addHole(long offset, long length) {
+		holes.put(offset, length);
+		fits.add(new long[] { offset, length });
+	}
+
+	/**
+	 * The method that removes a free range once it is reused or merged.
+	 * 
+	 * @param offset
+	 * 		The offset of the range.
+	 * 
+	 * @param length
+	 * 		The length of the range.
+	 */
+	private void removeHole(long offset, long length) {
+		holes.remove(offset);
+		fits.remove(new long[] { offset, length });
+	}
+
+	@Override
+	public byte[] read(long offset, int length) {
+
+		if (offset < 0 || length < 0 || offset + length > size()) {
+			throw new IllegalArgumentException(String.format("offset=%d length=%d is out of range: %d", offset, length, size()));
+		}
+
+		byte[] data = new byte[length];
+
+		int read = 0;
+
+		while (read < length) {
+
+			ByteBuffer buffer = region((int) ((offset + read) / regionSize)).duplicate();
+
+			buffer.position((int) ((offset + read) % regionSize));
+
+			int chunk = Math.min(buffer.remaining(), length - read);
+
+			buffer.get(data, read, chunk);
+
+			read += chunk;
+		}
+
+		return data;
+	}
+
+	/**
+	 * The method that allocates a new region.
+	 * 
+	 * @param size
+	 * 		The size of the region.
+	 * 
+	 * @return The allocated region.
+	 */
+	protected abstract ByteBuffer allocate(int size);
+
+	/**
+	 * Gets an allocated region by its position.
+	 * 
+	 * @param region
+	 * 		The position of the region.
+	 * 
+	 * @return The region.
+	 */
+	private synchronized ByteBuffer region(int region) {
+		return regions.get(region);
+	}
+
+	@Override
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Gets the amount of memory reserved by this store.
+	 * 
+	 * @return The capacity in bytes.
+	 */
+	public synchronized long capacity() {
+		return (long) regions.size() * regionSize;
+	}
+
+	/**
+	 * Gets the amount of bytes below the size of this store that have been freed and not reused yet.
+	 * 
+	 * @return The free bytes.
+	 */
+	public synchronized long unused() {
+		long unused = 0;
+
+		for (long length : holes.values()) {
+			unused += length;
+		}
+
+		return unused;
+	}
+
+	@Override
+	public synchronized void close() {
+		regions.clear();
+		holes.clear();
+		fits.clear();
+		size = 0;
+	}
+
+}
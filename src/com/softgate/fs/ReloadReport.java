@@ -0,0 +1,114 @@
+package com.softgate.fs;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes the cost of swapping a {@link ReloadableFileSystem} over to a new archive.
+ * 
+ * @author Chad Adams
+ */
+public final class ReloadReport {
+
+	/**
+	 * The path of the archive that was loaded.
+	 */
+	private final String path;
+
+	/**
+	 * The time it took to open the archive, in nanoseconds.
+	 */
+	private final long loadTime;
+
+	/**
+	 * The time it took to swap the opened archive in, in nanoseconds.
+	 */
+	private final long swapTime;
+
+	/**
+	 * The heap usage right before the archive was opened.
+	 */
+	private final long heapBefore;
+
+	/**
+	 * The highest heap usage sampled while the archive was opened and swapped in.
+	 */
+	private final long peakHeap;
+
+	/**
+	 * The heap usage right after the archive was swapped in.
+	 */
+	private final long heapAfter;
+
+	/**
+	 * The direct memory usage right after the archive was swapped in.
+	 */
+	private final long directAfter;
+
+	/**
+	 * Creates a new {@link ReloadReport}.
+	 * 
+	 * @param path
+	 * 		The path of the archive that was loaded.
+	 * 
+	 * @param loadTime
+	 * 		The time it took to open the archive, in nanoseconds.
+	 * 
+	 * @param swapTime
+	 * 		The time it took to swap the archive in, in nanoseconds.
+	 * 
+	 * @param heapBefore
+	 * 		The heap usage before the archive was opened.
+	 * 
+	 * @param peakHeap
+	 * 		The highest heap usage sampled while the archive was opened and swapped in.
+	 * 
+	 * @param heapAfter
+	 * 		The heap usage after the archive was swapped in.
+	 * 
+	 * @param directAfter
+	 * 		The direct memory usage after the archive was swapped in.
+	 */
+	ReloadReport(String path, long loadTime, long swapTime, long heapBefore, long peakHeap, long heapAfter, long directAfter) {
+		this.path = path;
+		this.loadTime = loadTime;
+		this.swapTime = swapTime;
+		this.heapBefore = heapBefore;
+		this.peakHeap = peakHeap;
+		this.heapAfter = heapAfter;
+		this.directAfter = directAfter;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getLoadTime(TimeUnit unit) {
+		return unit.convert(loadTime, TimeUnit.NANOSECONDS);
+	}
+
+	public long getSwapTime(TimeUnit unit) {
+		return unit.convert(swapTime, TimeUnit.NANOSECONDS);
+	}
+
+	public long getHeapBefore() {
+		return heapBefore;
+	}
+
+	public long getPeakHeap() {
+		return peakHeap;
+	}
+
+	public long getHeapAfter() {
+		return heapAfter;
+	}
+
+	public long getDirectAfter() {
+		return directAfter;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("reload=[path=%s, load=%dms, swap=%dus, heapBefore=%d, peakHeap=%d, heapAfter=%d, directAfter=%d]", path,
+				getLoadTime(TimeUnit.MILLISECONDS), getSwapTime(TimeUnit.MICROSECONDS), heapBefore, peakHeap, heapAfter, directAfter);
+	}
+
+}
@@ -0,0 +1,526 @@
+package com.softgate.fs;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A handle to an {@link IndexedFileSystem} that can be swapped for a newly deployed archive while the server keeps
+ * reading. Readers always see either the old or the new archive, and the old archive is closed as soon as the last read
+ * that started against it has finished.
+ * 
+ * @author Chad Adams
+ */
+public class ReloadableFileSystem implements Closeable {
+
+	/**
+	 * The time the watched archive must stay unmodified before it is reloaded, in milliseconds.
+	 */
+	private static final long QUIET_PERIOD = 500;
+
+	/**
+	 * The time between two samples of the heap usage while a reload is running, in milliseconds.
+	 */
+	private static final long SAMPLE_INTERVAL = 1;
+
+	/**
+	 * The archive readers are currently directed to, or {@code null} once this handle is closed.
+	 */
+	private final AtomicReference<Generation> current = new AtomicReference<>();
+
+	/**
+	 * The strategy used to open archives.
+	 */
+	private final FileSystemLoader loader;
+
+	/**
+	 * The executor that opens archives in the background.
+	 */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ibfs-reload");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The service that watches the archive for changes, or {@code null} if the archive is not being watched.
+	 */
+	private WatchService watchService;
+
+	/**
+	 * The private constructor.
+	 * 
+	 * @param loader
+	 * 		The strategy used to open archives.
+	 */
+	private ReloadableFileSystem(FileSystemLoader loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * The method that opens a reloadable handle to an encoded {@link IndexedFileSystem}.
+	 * 
+	 * @param path
+	 * 		The path of the archive to open.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be decoded or does not exist.
+	 * 
+	 * @return The reloadable file system.
+	 */
+	public static ReloadableFileSystem open(String path) throws IOException {
+		return open(path, IndexedFileSystem::decode);
+	}
+
+	/**
+	 * The method that opens a reloadable handle to an encoded {@link IndexedFileSystem}.
+	 * 
+	 * @param path
+	 * 		The path of the archive to open.
+	 * 
+	 * @param loader
+	 * 		The strategy used to open this archive and every archive that replaces it.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be decoded or does not exist.
+	 * 
+	 * @return The reloadable file system.
+	 */
+	public static ReloadableFileSystem open(String path, FileSystemLoader loader) throws IOException {
+		ReloadableFileSystem fs = new ReloadableFileSystem(loader);
+		fs.current.set(new Generation(loader.load(path), path));
+		return fs;
+	}
+
+	/**
+	 * The method that runs a function against the current archive. The archive is guaranteed to stay open until the
+	 * function returns, even if a reload swaps it out in the meantime.
+	 * 
+	 * @param function
+	 * 		The function to run.
+	 * 
+	 * @return The result of the function.
+	 */
+	public <T> T apply(Function<IndexedFileSystem, T> function) {
+		Generation generation = acquire();
+
+		try {
+			return function.apply(generation.fs);
+		} finally {
+			generation.release();
+		}
+	}
+
+	/**
+	 * The method that will read bytes at a specific {@link IndexedFile} of the current archive.
+	 * 
+	 * @param id
+	 * 		The id of the index to read from.
+	 * 
+	 * @param file
+	 * 		The id of the file to read.
+	 * 
+	 * @return The bytes read at the specified file.
+	 */
+	public byte[] read(int id, int file) {
+		return apply(fs -> fs.read(id, file));
+	}
+
+	/**
+	 * Gets the data from an {@link IndexedFile} of the current archive by its name.
+	 * 
+	 * @param id
+	 * 		The id of the index to read from.
+	 * 
+	 * @param fileName
+	 * 		The name of the indexed file.
+	 * 
+	 * @return The data.
+	 */
+	public byte[] read(int id, String fileName) {
+		return apply(fs -> fs.read(id, fileName));
+	}
+
+	/**
+	 * The method that opens a new archive on the calling thread and atomically switches readers over to it. Only the
+	 * swap itself holds the lock of this handle, so opening a large archive never holds up anything else. Reads that
+	 * are still running against the old archive finish normally, and the old archive is closed after the last one.
+	 * 
+	 * @param path
+	 * 		The path of the new archive.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the new archive cannot be decoded, in which case the old archive stays in place.
+	 * 
+	 * @return The report describing the cost of the reload.
+	 */
+	public ReloadReport reload(String path) throws IOException {
+
+		if (current.get() == null) {
+			throw new IllegalStateException("The file system has been closed.");
+		}
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+		HeapSampler sampler = new HeapSampler(memory, heapBefore);
+
+		sampler.start();
+
+		long start = System.nanoTime();
+
+		Generation next;
+
+		long loaded;
+
+		Generation previous;
+
+		long swapped;
+
+		long peakHeap;
+
+		try {
+			next = new Generation(loader.load(path), path);
+
+			loaded = System.nanoTime();
+
+			synchronized (this) {
+				previous = current.get();
+
+				if (previous != null) {
+					current.set(next);
+				}
+			}
+
+			swapped = System.nanoTime();
+		} finally {
+			peakHeap = sampler.finish();
+		}
+
+		if (previous == null) {
+			next.release();
+			throw new IllegalStateException("The file system has been closed.");
+		}
+
+		try {
+			previous.release();
+		} catch (UncheckedIOException ex) {
+			// readers have already moved to the new archive, failing to close the old one does not undo the reload
+		}
+
+		return new ReloadReport(path, loaded - start, swapped - loaded, heapBefore, peakHeap, memory.getHeapMemoryUsage().getUsed(), directMemoryUsed());
+	}
+
+	/**
+	 * The method that opens a new archive in the background and switches readers over to it once it is ready.
+	 * 
+	 * @param path
+	 * 		The path of the new archive.
+	 * 
+	 * @return The future that completes with the reload report, or exceptionally if the archive could not be opened.
+	 */
+	public CompletableFuture<ReloadReport> reloadAsync(String path) {
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return reload(path);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}, executor);
+		} catch (RejectedExecutionException ex) {
+			CompletableFuture<ReloadReport> future = new CompletableFuture<>();
+			future.completeExceptionally(new IllegalStateException("The file system has been closed."));
+			return future;
+		}
+	}
+
+	/**
+	 * The method that starts watching the current archive's path, reloading it in the background whenever it is
+	 * replaced. Deploying by writing to a temporary file and renaming it over the archive avoids reading a partial file.
+	 * 
+	 * @param callback
+	 * 		The callback that receives the report of every reload, or the exception of a reload that failed.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the directory of the archive cannot be watched.
+	 */
+	public synchronized void watch(BiConsumer<ReloadReport, Throwable> callback) throws IOException {
+
+		if (watchService != null) {
+			throw new IllegalStateException("The archive is already being watched.");
+		}
+
+		Path path = Paths.get(getPath()).toAbsolutePath();
+
+		WatchService service = FileSystems.getDefault().newWatchService();
+
+		path.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		watchService = service;
+
+		Thread thread = new Thread(() -> {
+			try {
+				while (current.get() != null) {
+
+					if (!changed(service.take(), path)) {
+						continue;
+					}
+
+					WatchKey key;
+
+					while ((key = service.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null) {
+						changed(key, path);
+					}
+
+					if (current.get() != null) {
+						reloadAsync(path.toString()).whenComplete(callback);
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException ex) {
+				// the handle has been closed
+			}
+		}, "ibfs-reload-watcher");
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * The method that drains a watch key and checks whether any of its events concern the archive.
+	 * 
+	 * @param key
+	 * 		The key to drain.
+	 * 
+	 * @param path
+	 * 		The path of the archive.
+	 * 
+	 * @return {@code true} if the archive changed.
+	 */
+	private static boolean changed(WatchKey key, Path path) {
+		boolean changed = false;
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (path.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+
+		key.reset();
+
+		return changed;
+	}
+
+	/**
+	 * Gets the amount of direct memory currently in use by this process.
+	 * 
+	 * @return The direct memory in bytes.
+	 */
+	private static long directMemoryUsed() {
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				return pool.getMemoryUsed();
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * The method that retains the current archive for a read.
+	 * 
+	 * @return The retained archive.
+	 */
+	private Generation acquire() {
+		while (true) {
+			Generation generation = current.get();
+
+			if (generation == null) {
+				throw new IllegalStateException("The file system has been closed.");
+			}
+
+			if (generation.retain()) {
+				return generation;
+			}
+		}
+	}
+
+	/**
+	 * Gets the path of the archive readers are currently directed to.
+	 * 
+	 * @return The path.
+	 */
+	public String getPath() {
+		Generation generation = current.get();
+
+		if (generation == null) {
+			throw new IllegalStateException("The file system has been closed.");
+		}
+
+		return generation.path;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		executor.shutdownNow();
+
+		if (watchService != null) {
+			watchService.close();
+		}
+
+		Generation generation = current.getAndSet(null);
+
+		if (generation != null) {
+			generation.release();
+		}
+	}
+
+	/**
+	 * Represents an opened archive along with the amount of readers that are using it.
+	 */
+	private static final class Generation {
+
+		/**
+		 * The opened archive.
+		 */
+		private final IndexedFileSystem fs;
+
+		/**
+		 * The path of the opened archive.
+		 */
+		private final String path;
+
+		/**
+		 * The amount of references to this archive, one of which belongs to the handle while the archive is current.
+		 */
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		Generation(IndexedFileSystem fs, String path) {
+			this.fs = fs;
+			this.path = path;
+		}
+
+		/**
+		 * The method that adds a reference to this archive unless it has already been closed.
+		 * 
+		 * @return {@code true} if the reference was added.
+		 */
+		boolean retain() {
+			while (true) {
+				int count = references.get();
+
+				if (count == 0) {
+					return false;
+				}
+
+				if (references.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * The method that drops a reference to this archive, closing it once no references are left.
+		 */
+		void release() {
+			if (references.decrementAndGet() == 0) {
+				try {
+					fs.close();
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Represents a thread that samples the heap usage while a reload is running and keeps the highest value it saw.
+	 * Sampling leaves the peak usage of the memory pools alone, which other monitoring may rely on.
+	 */
+	private static final class HeapSampler extends Thread {
+
+		/**
+		 * The bean the heap usage is read from.
+		 */
+		private final MemoryMXBean memory;
+
+		/**
+		 * Whether the reload is still running.
+		 */
+		private volatile boolean running = true;
+
+		/**
+		 * The highest heap usage sampled so far.
+		 */
+		private volatile long peak;
+
+		HeapSampler(MemoryMXBean memory, long initial) {
+			super("ibfs-reload-sampler");
+			setDaemon(true);
+			this.memory = memory;
+			this.peak = initial;
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+
+				try {
+					Thread.sleep(SAMPLE_INTERVAL);
+				} catch (InterruptedException ex) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * The method that stops sampling once the reload is over.
+		 * 
+		 * @return The highest heap usage seen during the reload, including a last sample taken now.
+		 */
+		long finish() {
+			running = false;
+			interrupt();
+
+			boolean interrupted = false;
+
+			while (isAlive()) {
+				try {
+					join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			return Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+		}
+
+	}
+
+}
@@ -0,0 +1,258 @@
+package com.softgate.fs;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes what a {@link Repacker} did to an archive, in total and per index. The compressed size and compression time
+ * of a block that holds files of several indexes is split between them by the amount of bytes each one has in it.
+ * 
+ * @author Chad Adams
+ */
+public final class RepackReport {
+
+	/**
+	 * The path of the archive that was read.
+	 */
+	private final String source;
+
+	/**
+	 * The path of the archive that was written.
+	 */
+	private final String target;
+
+	/**
+	 * The size of the source archive.
+	 */
+	private final long sourceSize;
+
+	/**
+	 * The size of the target archive.
+	 */
+	private final long targetSize;
+
+	/**
+	 * The time the repack took, in nanoseconds.
+	 */
+	private final long elapsed;
+
+	/**
+	 * The amount of blocks that were copied as is.
+	 */
+	private final int copiedBlocks;
+
+	/**
+	 * The amount of blocks that were compressed.
+	 */
+	private final int compressedBlocks;
+
+	/**
+	 * The id of each index.
+	 */
+	private final int[] indexIds;
+
+	/**
+	 * The name of each index.
+	 */
+	private final String[] indexNames;
+
+	/**
+	 * The amount of files in each index.
+	 */
+	private final int[] files;
+
+	/**
+	 * The decompressed size of each index.
+	 */
+	private final long[] bytes;
+
+	/**
+	 * The compressed size of each index in the source archive, or {@code null} if the source does not compress indexes
+	 * separately.
+	 */
+	private final long[] sourceBytes;
+
+	/**
+	 * The compressed size of each index in the target archive.
+	 */
+	private final long[] targetBytes;
+
+	/**
+	 * The time spent compressing each index, in nanoseconds.
+	 */
+	private final long[] nanos;
+
+	/**
+	 * Creates a new {@link RepackReport}.
+	 * 
+	 * @param source
+	 * 		The path of the archive that was read.
+	 * 
+	 * @param target
+	 * 		The path of the archive that was written.
+	 * 
+	 * @param sourceSize
+	 * 		The size of the source archive.
+	 * 
+	 * @param targetSize
+	 * 		The size of the target archive.
+	 * 
+	 * @param elapsed
+	 * 		The time the repack took, in nanoseconds.
+	 * 
+	 * @param copiedBlocks
+	 * 		The amount of blocks that were copied as is.
+	 * 
+	 * @param compressedBlocks
+	 * 		The amount of blocks that were compressed.
+	 * 
+	 * @param indexIds
+	 * 		The id of each index.
+	 * 
+	 * @param indexNames
+	 * 		The name of each index.
+	 * 
+	 * @param files
+	 * 		The amount of files in each index.
+	 * 
+	 * @param bytes
+	 * 		The decompressed size of each index.
+	 * 
+	 * @param sourceBytes
+	 * 		The compressed size of each index in the source archive, or {@code null} if it is not known.
+	 * 
+	 * @param targetBytes
+	 * 		The compressed size of each index in the target archive.
+	 * 
+	 * @param nanos
+	 * 		The time spent compressing each index, in nanoseconds.
+	 */
+	RepackReport(String source, String target, long sourceSize, long targetSize, long elapsed, int copiedBlocks, int compressedBlocks, int[] indexIds, String[] indexNames, int[] files, long[] bytes, long[] sourceBytes, long[] targetBytes, long[] nanos) {
+		this.source = source;
+		this.target = target;
+		this.sourceSize = sourceSize;
+		this.targetSize = targetSize;
+		this.elapsed = elapsed;
+		this.copiedBlocks = copiedBlocks;
+		this.compressedBlocks = compressedBlocks;
+		this.indexIds = indexIds;
+		this.indexNames = indexNames;
+		this.files = files;
+		this.bytes = bytes;
+		this.sourceBytes = sourceBytes;
+		this.targetBytes = targetBytes;
+		this.nanos = nanos;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+	public long getSourceSize() {
+		return sourceSize;
+	}
+
+	public long getTargetSize() {
+		return targetSize;
+	}
+
+	public long getElapsed(TimeUnit unit) {
+		return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+	}
+
+	public int getCopiedBlocks() {
+		return copiedBlocks;
+	}
+
+	public int getCompressedBlocks() {
+		return compressedBlocks;
+	}
+
+	/**
+	 * Gets the amount of indexes in the archive.
+	 * 
+	 * @return The amount of indexes.
+	 */
+	public int getIndexCount() {
+		return indexIds.length;
+	}
+
+	public int getIndexId(int index) {
+		return indexIds[index];
+	}
+
+	public String getIndexName(int index) {
+		return indexNames[index];
+	}
+
+	public int getFiles(int index) {
+		return files[index];
+	}
+
+	public long getBytes(int index) {
+		return bytes[index];
+	}
+
+	/**
+	 * Gets the compressed size of an index in the source archive.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @return The compressed size, or {@code -1} if the source compresses every index as one stream.
+	 */
+	public long getSourceBytes(int index) {
+		return sourceBytes == null ? -1 : sourceBytes[index];
+	}
+
+	public long getTargetBytes(int index) {
+		return targetBytes[index];
+	}
+
+	/**
+	 * Gets the compressed size of an index in the target archive divided by its decompressed size.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @return The ratio, or 1 for an empty index.
+	 */
+	public double getRatio(int index) {
+		return bytes[index] == 0 ? 1 : (double) targetBytes[index] / bytes[index];
+	}
+
+	/**
+	 * Gets the time spent compressing an index, summed over every thread.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @param unit
+	 * 		The unit to convert the time to.
+	 * 
+	 * @return The time.
+	 */
+	public long getTime(int index, TimeUnit unit) {
+		return unit.convert(nanos[index], TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+
+		builder.append(String.format("%-4s %-16s %8s %14s %14s %14s %7s %10s%n", "id", "index", "files", "bytes", "source", "target", "ratio", "cpu ms"));
+
+		for (int index = 0; index < indexIds.length; index++) {
+			builder.append(String.format("%-4d %-16s %8d %14d %14s %14d %7.3f %10d%n", indexIds[index], indexNames[index], files[index], bytes[index],
+					sourceBytes == null ? "-" : Long.toString(sourceBytes[index]), targetBytes[index], getRatio(index), getTime(index, TimeUnit.MILLISECONDS)));
+		}
+
+		builder.append(String.format("%s (%d bytes) -> %s (%d bytes) in %d ms, blocks copied=%d compressed=%d", source, sourceSize, target, targetSize,
+				getElapsed(TimeUnit.MILLISECONDS), copiedBlocks, compressedBlocks));
+
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,504 @@
+package com.softgate.fs;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToLongFunction;
+
+import com.softgate.fs.BlockArchive.Block;
+import com.softgate.fs.BlockArchive.BlockWriter;
+import com.softgate.fs.BlockArchive.TableOfContents;
+
+/**
+ * Converts an encoded archive to a block archive with another codec or compression preset without decoding it into
+ * memory. The source is read as a stream, blocks are compressed on several threads while the finished ones are written
+ * to the target in order, and only a bounded amount of blocks is held in memory at a time.
+ * 
+ * <p>A block archive is repacked block for block, so its layout and the offsets of its files are kept and a block that
+ * is already compressed with the target codec is copied as is, unless a preset was asked for. A stream archive written
+ * by {@link IndexedFileSystem#encode()} is split into blocks of about the block size in index order, the same way
+ * {@link AccessLayout#natural(IndexedFileSystem, int)} does. To change the layout itself, decode the archive and write it
+ * with {@link IndexedFileSystem#write(File, AccessLayout, BlockCodec)} instead.</p>
+ * 
+ * <p>The target is written to a temporary file next to it and moved into place once it is complete, so a failed repack
+ * leaves neither a partial target nor a changed one.</p>
+ * 
+ * @author Chad Adams
+ */
+public final class Repacker {
+
+	/**
+	 * The preset that keeps blocks that are already compressed with the target codec as they are.
+	 */
+	public static final int KEEP_PRESET = -1;
+
+	/**
+	 * The size of the buffer payloads are streamed through.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The amount of blocks per thread that may be waiting to be written.
+	 */
+	private static final int BLOCKS_PER_THREAD = 2;
+
+	/**
+	 * The codec to compress the target with.
+	 */
+	private final BlockCodec codec;
+
+	/**
+	 * The preset to compress the target with, or {@link #KEEP_PRESET}.
+	 */
+	private final int preset;
+
+	/**
+	 * The amount of decompressed bytes a block of a stream archive is filled with.
+	 */
+	private final int blockSize;
+
+	/**
+	 * The amount of threads that compress blocks.
+	 */
+	private final int threads;
+
+	/**
+	 * The private constructor.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the target with.
+	 * 
+	 * @param preset
+	 * 		The preset to compress the target with, or {@link #KEEP_PRESET}.
+	 * 
+	 * @param blockSize
+	 * 		The amount of decompressed bytes a block of a stream archive is filled with.
+	 * 
+	 * @param threads
+	 * 		The amount of threads that compress blocks.
+	 */
+	private Repacker(BlockCodec codec, int preset, int blockSize, int threads) {
+		this.codec = codec;
+		this.preset = preset;
+		this.blockSize = blockSize;
+		this.threads = threads;
+	}
+
+	/**
+	 * The method that creates a repacker that keeps blocks already compressed with the codec, fills blocks with
+	 * {@link LayoutOptimizer#DEFAULT_CLUSTER_SIZE} bytes and uses a thread per core.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the target with.
+	 * 
+	 * @return The created repacker.
+	 */
+	public static Repacker create(BlockCodec codec) {
+		return create(codec, KEEP_PRESET, LayoutOptimizer.DEFAULT_CLUSTER_SIZE, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * The method that creates a repacker.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the target with.
+	 * 
+	 * @param preset
+	 * 		The preset to compress every block with, or {@link #KEEP_PRESET} to copy blocks that are already compressed
+	 * 		with the codec and compress the others with {@link BlockCodec#DEFAULT_PRESET}.
+	 * 
+	 * @param blockSize
+	 * 		The amount of decompressed bytes a block of a stream archive is filled with.
+	 * 
+	 * @param threads
+	 * 		The amount of threads that compress blocks.
+	 * 
+	 * @return The created repacker.
+	 */
+	public static Repacker create(BlockCodec codec, int preset, int blockSize, int threads) {
+
+		if (preset != KEEP_PRESET && (preset < BlockCodec.MIN_PRESET || preset > BlockCodec.MAX_PRESET)) {
+			throw new IllegalArgumentException(String.format("preset=%d must be between %d and %d.", preset, BlockCodec.MIN_PRESET, BlockCodec.MAX_PRESET));
+		}
+
+		if (blockSize < 1 || blockSize > BlockArchive.MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException(String.format("blockSize=%d must be between 1 and %d.", blockSize, BlockArchive.MAX_BLOCK_SIZE));
+		}
+
+		if (threads < 1) {
+			throw new IllegalArgumentException(String.format("threads=%d must be at least 1.", threads));
+		}
+
+		return new Repacker(codec, preset, blockSize, threads);
+	}
+
+	/**
+	 * The method that repacks an archive.
+	 * 
+	 * @param source
+	 * 		The path of the block or stream archive to read.
+	 * 
+	 * @param target
+	 * 		The file to write the block archive to, which cannot be the source.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the source cannot be read or the target cannot be written.
+	 * 
+	 * @return The report of what was repacked.
+	 */
+	public RepackReport repack(String source, File target) throws IOException {
+		Path path = Paths.get(source);
+
+		if (target.exists() && Files.isSameFile(path, target.toPath())) {
+			throw new IllegalArgumentException(String.format("target=%s cannot be the source.", target));
+		}
+
+		if (ShardedArchive.isDescriptor(path)) {
+			throw new IOException(String.format("%s is sharded, decode it and write it with IndexedFileSystem#writeSharded instead.", path));
+		}
+
+		AtomicInteger count = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "ibfs-repack-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long begin = System.nanoTime();
+
+		Path temporary = target.toPath().resolveSibling(target.getName() + ".tmp");
+
+		BlockWriter writer;
+
+		TableOfContents toc;
+
+		long[] sourceBytes = null;
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+
+			out.writeInt(BlockArchive.MAGIC);
+			out.writeByte(BlockArchive.VERSION);
+
+			if (BlockArchive.isBlockArchive(path)) {
+
+				try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+					toc = TableOfContents.read(channel, path);
+
+					int largest = blockSize;
+
+					for (int length : toc.lengths) {
+						largest = Math.max(largest, length);
+					}
+
+					writer = createWriter(out, executor, largest);
+
+					transcode(channel, toc, writer);
+
+					sourceBytes = attribute(toc, toc.starts, toc.lengths, block -> toc.compressedLengths[block]);
+				}
+
+			} else {
+				writer = createWriter(out, executor, blockSize);
+
+				toc = restream(path, writer);
+			}
+
+			writer.finish();
+
+			toc.writeIndexes(out);
+
+			out.writeLong(writer.position());
+			out.writeInt(BlockArchive.MAGIC);
+		} catch (IOException | RuntimeException ex) {
+			Files.deleteIfExists(temporary);
+			throw ex;
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Files.move(temporary, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		return report(path, target, System.nanoTime() - begin, toc, writer.getBlocks(), sourceBytes);
+	}
+
+	/**
+	 * The method that creates the writer of the target archive.
+	 * 
+	 * @param out
+	 * 		The stream of the target archive.
+	 * 
+	 * @param executor
+	 * 		The executor blocks are compressed on.
+	 * 
+	 * @param largest
+	 * 		The decompressed length of the largest block that will be written.
+	 * 
+	 * @return The writer.
+	 */
+	private BlockWriter createWriter(DataOutputStream out, ExecutorService executor, int largest) {
+		return new BlockWriter(out, codec, preset == KEEP_PRESET ? BlockCodec.DEFAULT_PRESET : preset, executor, (long) threads * BLOCKS_PER_THREAD * largest);
+	}
+
+	/**
+	 * The method that writes every block of a block archive to the target, copying the ones that already have the
+	 * target codec and recompressing the others.
+	 * 
+	 * @param channel
+	 * 		The channel of the source archive.
+	 * 
+	 * @param toc
+	 * 		The table of contents of the source archive.
+	 * 
+	 * @param writer
+	 * 		The writer of the target archive.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if a block cannot be read or written.
+	 */
+	private void transcode(FileChannel channel, TableOfContents toc, BlockWriter writer) throws IOException {
+
+		for (int block = 0; block < toc.codecs.length; block++) {
+
+			if (toc.starts[block] != writer.offset()) {
+				throw new IOException(String.format("block=%d starts at %d instead of %d.", block, toc.starts[block], writer.offset()));
+			}
+
+			byte[] compressed = BlockArchive.readFully(channel, toc.positions[block], toc.compressedLengths[block]).array();
+
+			if (toc.codecs[block] == codec && preset == KEEP_PRESET) {
+				writer.copy(codec, compressed, toc.lengths[block]);
+			} else {
+				writer.transcode(toc.codecs[block], compressed, toc.lengths[block]);
+			}
+		}
+	}
+
+	/**
+	 * The method that streams every file of a stream archive into blocks of the target, starting a new block for each
+	 * index and whenever the next file would overflow the block size. Only the table of contents is kept, never an
+	 * entry of the source.
+	 * 
+	 * @param path
+	 * 		The path of the source archive.
+	 * 
+	 * @param writer
+	 * 		The writer of the target archive.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the source cannot be read or a block cannot be written.
+	 * 
+	 * @return The table of contents of the target archive.
+	 */
+	private TableOfContents restream(Path path, BlockWriter writer) throws IOException {
+
+		try(StreamArchiveReader reader = new StreamArchiveReader(path)) {
+
+			int indexes = reader.getIndexCount();
+
+			TableOfContents toc = new TableOfContents();
+
+			toc.indexIds = new int[indexes];
+			toc.indexNames = new String[indexes];
+			toc.fileIds = new int[indexes][];
+			toc.fileNames = new String[indexes][];
+			toc.offsets = new long[indexes][];
+			toc.fileLengths = new long[indexes][];
+
+			byte[] buffer = new byte[BUFFER_SIZE];
+
+			int current = -1;
+
+			int file = 0;
+
+			try {
+				while (reader.hasNext()) {
+
+					ArchiveEntry entry = reader.next();
+
+					if (entry.getIndex() != current || writer.buffered() > 0 && writer.buffered() + entry.getLength() > blockSize) {
+						writer.flush();
+					}
+
+					if (entry.getIndex() != current) {
+						current = entry.getIndex();
+						file = 0;
+						allocate(toc, current, reader.getFileCount(current));
+					}
+
+					toc.fileIds[current][file] = entry.getId();
+					toc.fileNames[current][file] = entry.getName();
+					toc.offsets[current][file] = writer.offset();
+					toc.fileLengths[current][file] = entry.getLength();
+
+					file++;
+
+					try(InputStream in = entry.getInputStream()) {
+						int read;
+
+						while ((read = in.read(buffer)) != -1) {
+							writer.write(buffer, read);
+						}
+					}
+				}
+			} catch (UncheckedIOException ex) {
+				throw ex.getCause();
+			}
+
+			for (int index = 0; index < indexes; index++) {
+				toc.indexIds[index] = reader.getIndexId(index);
+				toc.indexNames[index] = reader.getIndexName(index);
+
+				if (toc.fileIds[index] == null) {
+					allocate(toc, index, 0);
+				}
+			}
+
+			return toc;
+		}
+	}
+
+	/**
+	 * The method that creates the file arrays of an index in a table of contents.
+	 * 
+	 * @param toc
+	 * 		The table of contents.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @param files
+	 * 		The amount of files of the index.
+	 */
+	private static void allocate(TableOfContents toc, int index, int files) {
+		toc.fileIds[index] = new int[files];
+		toc.fileNames[index] = new String[files];
+		toc.offsets[index] = new long[files];
+		toc.fileLengths[index] = new long[files];
+	}
+
+	/**
+	 * The method that creates the report of a repack.
+	 * 
+	 * @param source
+	 * 		The path of the source archive.
+	 * 
+	 * @param target
+	 * 		The target archive.
+	 * 
+	 * @param elapsed
+	 * 		The time the repack took, in nanoseconds.
+	 * 
+	 * @param toc
+	 * 		The table of contents of the target archive.
+	 * 
+	 * @param blocks
+	 * 		The blocks of the target archive.
+	 * 
+	 * @param sourceBytes
+	 * 		The compressed size of each index in the source archive, or {@code null} if it is not known.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the size of an archive cannot be read.
+	 * 
+	 * @return The report.
+	 */
+	private static RepackReport report(Path source, File target, long elapsed, TableOfContents toc, List<Block> blocks, long[] sourceBytes) throws IOException {
+		long[] starts = new long[blocks.size()];
+		int[] lengths = new int[blocks.size()];
+
+		int copied = 0;
+
+		for (int block = 0; block < blocks.size(); block++) {
+			starts[block] = blocks.get(block).start;
+			lengths[block] = blocks.get(block).length;
+
+			if (blocks.get(block).copied) {
+				copied++;
+			}
+		}
+
+		int[] files = new int[toc.indexIds.length];
+		long[] bytes = new long[files.length];
+
+		for (int index = 0; index < files.length; index++) {
+			files[index] = toc.fileIds[index].length;
+
+			for (long length : toc.fileLengths[index]) {
+				bytes[index] += length;
+			}
+		}
+
+		return new RepackReport(source.toString(), target.toString(), Files.size(source), target.length(), elapsed, copied, blocks.size() - copied,
+				toc.indexIds, toc.indexNames, files, bytes, sourceBytes, attribute(toc, starts, lengths, block -> blocks.get(block).compressedLength),
+				attribute(toc, starts, lengths, block -> blocks.get(block).nanos));
+	}
+
+	/**
+	 * The method that splits a value of every block between the indexes whose files it holds, by the amount of bytes
+	 * each index has in the block.
+	 * 
+	 * @param toc
+	 * 		The table of contents whose files are counted.
+	 * 
+	 * @param starts
+	 * 		The decompressed offset of each block, in ascending order.
+	 * 
+	 * @param lengths
+	 * 		The decompressed length of each block.
+	 * 
+	 * @param value
+	 * 		The function that gets the value of a block.
+	 * 
+	 * @return The share of the values of each index.
+	 */
+	private static long[] attribute(TableOfContents toc, long[] starts, int[] lengths, IntToLongFunction value) {
+		double[] shares = new double[toc.indexIds.length];
+
+		for (int index = 0; index < shares.length; index++) {
+
+			for (int file = 0; file < toc.offsets[index].length; file++) {
+
+				long offset = toc.offsets[index][file];
+				long end = offset + toc.fileLengths[index][file];
+
+				int block = Arrays.binarySearch(starts, offset);
+
+				if (block < 0) {
+					block = -block - 2;
+				}
+
+				for (block = Math.max(block, 0); block < starts.length && starts[block] < end; block++) {
+					long overlap = Math.min(end, starts[block] + lengths[block]) - Math.max(offset, starts[block]);
+
+					if (overlap > 0) {
+						shares[index] += (double) value.applyAsLong(block) * overlap / lengths[block];
+					}
+				}
+			}
+
+		}
+
+		long[] rounded = new long[shares.length];
+
+		for (int index = 0; index < shares.length; index++) {
+			rounded[index] = Math.round(shares[index]);
+		}
+
+		return rounded;
+	}
+
+}
@@ -0,0 +1,495 @@
+package com.softgate.fs;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and writes sharded archives. A sharded archive is a small descriptor plus several data files, each of which is
+ * a block archive holding some of the indexes. Shards are opened through their own channels and caches, can be
+ * downloaded in parallel, and one shard can be rewritten without touching the others.
+ * 
+ * <pre>
+ * descriptor: int magic, byte version, long generation, int indexes, int shards,
+ *             per shard: UTF file name, long length, int indexes, per index: int position in the file system
+ * shard:      a block archive holding the shard's indexes in the order the descriptor lists them
+ * </pre>
+ * 
+ * Data files are named after the descriptor, the shard and the generation they were written in, {@code cache.dat} is
+ * split into {@code cache.dat.0.1}, {@code cache.dat.1.1} and so on. A rewritten shard never replaces the file a
+ * descriptor points at: it is written under the next generation, the descriptor is replaced atomically, and only then
+ * are the shards it no longer lists deleted. A reader therefore always opens the shards of the descriptor it read, and
+ * refuses to open a shard whose length does not match the descriptor.
+ * 
+ * @author Chad Adams
+ */
+final class ShardedArchive {
+
+	/**
+	 * The value every descriptor starts with, "IBSD" in ASCII.
+	 */
+	static final int MAGIC = 0x49425344;
+
+	/**
+	 * The version of the descriptor written by this class.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The private constructor to prevent instantiation.
+	 */
+	private ShardedArchive() {
+
+	}
+
+	/**
+	 * The method that checks whether a file is the descriptor of a sharded archive.
+	 * 
+	 * @param path
+	 * 		The path of the file.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the file cannot be read.
+	 * 
+	 * @return {@code true} if the file starts with the descriptor magic.
+	 */
+	static boolean isDescriptor(Path path) throws IOException {
+		return BlockArchive.startsWith(path, MAGIC);
+	}
+
+	/**
+	 * The method that opens a sharded archive. Only the descriptor and the table of contents of each shard are read,
+	 * payloads are inflated when they are first read.
+	 * 
+	 * @param path
+	 * 		The path of the descriptor.
+	 * 
+	 * @param overflow
+	 * 		The store that will hold payloads written after the archive was opened.
+	 * 
+	 * @param listener
+	 * 		The listener to notify, or {@code null} to disable instrumentation.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the descriptor or a shard cannot be read or is malformed.
+	 * 
+	 * @return The opened file system.
+	 */
+	static IndexedFileSystem open(Path path, PayloadStore overflow, FileSystemListener listener) throws IOException {
+		Descriptor descriptor = Descriptor.read(path);
+
+		int shards = descriptor.names.length;
+
+		BlockPayloadStore[] stores = new BlockPayloadStore[shards];
+
+		Index[] indexes = new Index[descriptor.indexes];
+
+		List<FileChannel> channels = new ArrayList<>();
+
+		try {
+			for (int shard = 0; shard < shards; shard++) {
+
+				Path shardPath = path.resolveSibling(descriptor.names[shard]);
+
+				long length = Files.size(shardPath);
+
+				if (length != descriptor.lengths[shard]) {
+					throw new IOException(String.format("shard=%s is %d bytes but the descriptor expects %d.", shardPath, length, descriptor.lengths[shard]));
+				}
+
+				FileChannel channel = FileChannel.open(shardPath, StandardOpenOption.READ);
+
+				channels.add(channel);
+
+				BlockArchive.TableOfContents toc = BlockArchive.TableOfContents.read(channel, shardPath);
+
+				int[] positions = descriptor.positions[shard];
+
+				if (toc.indexIds.length != positions.length) {
+					throw new IOException(String.format("shard=%s holds %d indexes but the descriptor expects %d.", shardPath, toc.indexIds.length, positions.length));
+				}
+
+				stores[shard] = new BlockPayloadStore(channel, toc.starts, toc.lengths, toc.positions, toc.compressedLengths, toc.codecs, ShardedPayloadStore.shared(overflow), BlockArchive.DEFAULT_CACHE_SIZE / shards);
+
+				for (int index = 0; index < positions.length; index++) {
+					indexes[positions[index]] = BlockArchive.createIndex(toc, index, stores[shard]);
+				}
+
+			}
+
+			for (int index = 0; index < indexes.length; index++) {
+				if (indexes[index] == null) {
+					throw new IOException(String.format("index=%d is not held by any shard.", index));
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			for (FileChannel channel : channels) {
+				channel.close();
+			}
+			throw ex;
+		}
+
+		IndexedFileSystem fs = IndexedFileSystem.create(new ShardedPayloadStore(stores, overflow));
+
+		fs.setListener(listener);
+
+		for (Index index : indexes) {
+			fs.add(index);
+		}
+
+		return fs;
+	}
+
+	/**
+	 * The method that writes a file system as a sharded archive. Whole indexes are packed into shards in order until a
+	 * shard holds {@code shardSize} bytes, so an index is never split, and an index larger than that gets a shard of its
+	 * own.
+	 * 
+	 * @param fs
+	 * 		The file system to write.
+	 * 
+	 * @param file
+	 * 		The descriptor to write, the data files are written next to it.
+	 * 
+	 * @param shardSize
+	 * 		The target amount of payload bytes per shard, or 0 to give every index a shard of its own.
+	 * 
+	 * @param blockSize
+	 * 		The target amount of decompressed bytes per block.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the blocks with.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be written.
+	 */
+	static void write(IndexedFileSystem fs, File file, long shardSize, int blockSize, BlockCodec codec) throws IOException {
+
+		if (shardSize < 0) {
+			throw new IllegalArgumentException(String.format("shardSize=%d cannot be negative.", shardSize));
+		}
+
+		List<Index> indexes = fs.getIndexes();
+
+		List<int[]> assignment = new ArrayList<>();
+
+		List<Integer> shard = new ArrayList<>();
+
+		long size = 0;
+
+		for (int index = 0; index < indexes.size(); index++) {
+
+			long length = 0;
+
+			for (IndexedFile indexedFile : indexes.get(index).getFiles()) {
+				length += indexedFile.getLength();
+			}
+
+			if (!shard.isEmpty() && (shardSize == 0 || size + length > shardSize)) {
+
+				assignment.add(shard.stream().mapToInt(Integer::intValue).toArray());
+				shard.clear();
+				size = 0;
+			}
+
+			shard.add(index);
+
+			size += length;
+		}
+
+		if (!shard.isEmpty()) {
+			assignment.add(shard.stream().mapToInt(Integer::intValue).toArray());
+		}
+
+		Path path = file.toPath();
+
+		Descriptor previous = Files.exists(path) && isDescriptor(path) ? Descriptor.read(path) : null;
+
+		Descriptor descriptor = new Descriptor();
+
+		descriptor.generation = previous == null ? 1 : previous.generation + 1;
+		descriptor.indexes = indexes.size();
+		descriptor.names = new String[assignment.size()];
+		descriptor.lengths = new long[assignment.size()];
+		descriptor.positions = assignment.toArray(new int[assignment.size()][]);
+
+		for (int i = 0; i < descriptor.names.length; i++) {
+			descriptor.names[i] = String.format("%s.%d.%d", file.getName(), i, descriptor.generation);
+			descriptor.lengths[i] = writeShard(indexes, descriptor.positions[i], path.resolveSibling(descriptor.names[i]), blockSize, codec);
+		}
+
+		descriptor.write(path);
+
+		if (previous != null) {
+			deleteShards(path, descriptor, previous.names);
+		}
+	}
+
+	/**
+	 * The method that rewrites a single shard of a sharded archive from the current contents of its indexes, leaving
+	 * every other shard untouched.
+	 * 
+	 * @param fs
+	 * 		The file system to write from, which must have the indexes the descriptor was written with.
+	 * 
+	 * @param file
+	 * 		The descriptor of the archive.
+	 * 
+	 * @param shard
+	 * 		The shard to rewrite.
+	 * 
+	 * @param blockSize
+	 * 		The target amount of decompressed bytes per block.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the blocks with.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the descriptor cannot be read or the shard cannot be written.
+	 */
+	static void writeShard(IndexedFileSystem fs, File file, int shard, int blockSize, BlockCodec codec) throws IOException {
+		Descriptor descriptor = Descriptor.read(file.toPath());
+
+		if (shard < 0 || shard >= descriptor.names.length) {
+			throw new IllegalArgumentException(String.format("shard=%d is out of range: %d", shard, descriptor.names.length));
+		}
+
+		if (descriptor.indexes != fs.getIndexes().size()) {
+			throw new IllegalArgumentException(String.format("the descriptor describes %d indexes but the file system has %d.", descriptor.indexes, fs.getIndexes().size()));
+		}
+
+		String superseded = descriptor.names[shard];
+
+		descriptor.generation++;
+		descriptor.names[shard] = String.format("%s.%d.%d", file.getName(), shard, descriptor.generation);
+		descriptor.lengths[shard] = writeShard(fs.getIndexes(), descriptor.positions[shard], file.toPath().resolveSibling(descriptor.names[shard]), blockSize, codec);
+
+		descriptor.write(file.toPath());
+
+		deleteShards(file.toPath(), descriptor, superseded);
+	}
+
+	/**
+	 * The method that deletes the data files a descriptor no longer lists. A file that cannot be deleted, for instance
+	 * because a reader still has it open on a system that doesn't allow that, is left behind, it is never read again.
+	 * 
+	 * @param path
+	 * 		The path of the descriptor.
+	 * 
+	 * @param descriptor
+	 * 		The descriptor that was written.
+	 * 
+	 * @param names
+	 * 		The file names of the superseded shards, relative to the descriptor.
+	 */
+	private static void deleteShards(Path path, Descriptor descriptor, String... names) {
+		List<String> live = Arrays.asList(descriptor.names);
+
+		for (String name : names) {
+
+			if (live.contains(name)) {
+				continue;
+			}
+
+			try {
+				Files.deleteIfExists(path.resolveSibling(name));
+			} catch (IOException ex) {
+				// the descriptor no longer points at the file, so leaving it behind is harmless
+			}
+		}
+	}
+
+	/**
+	 * The method that lists the data files of a sharded archive.
+	 * 
+	 * @param path
+	 * 		The path of the descriptor.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the descriptor cannot be read.
+	 * 
+	 * @return The data files.
+	 */
+	static List<File> shards(Path path) throws IOException {
+		Descriptor descriptor = Descriptor.read(path);
+
+		List<File> files = new ArrayList<>();
+
+		for (String name : descriptor.names) {
+			files.add(path.resolveSibling(name).toFile());
+		}
+
+		return files;
+	}
+
+	/**
+	 * The method that writes some indexes of a file system as one shard.
+	 * 
+	 * @param indexes
+	 * 		The indexes of the file system.
+	 * 
+	 * @param positions
+	 * 		The positions of the indexes that belong to the shard.
+	 * 
+	 * @param path
+	 * 		The path of the shard.
+	 * 
+	 * @param blockSize
+	 * 		The target amount of decompressed bytes per block.
+	 * 
+	 * @param codec
+	 * 		The codec to compress the blocks with.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the shard cannot be written.
+	 * 
+	 * @return The length of the written shard.
+	 */
+	private static long writeShard(List<Index> indexes, int[] positions, Path path, int blockSize, BlockCodec codec) throws IOException {
+		List<Index> shard = new ArrayList<>();
+
+		for (int position : positions) {
+			shard.add(indexes.get(position));
+		}
+
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+		BlockArchive.write(shard, temporary.toFile(), AccessLayout.natural(shard, blockSize), codec);
+
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		return Files.size(path);
+	}
+
+	/**
+	 * Represents the descriptor of a sharded archive.
+	 */
+	static final class Descriptor {
+
+		/**
+		 * The generation of this descriptor, increased every time a shard is written.
+		 */
+		long generation;
+
+		/**
+		 * The amount of indexes in the file system.
+		 */
+		int indexes;
+
+		/**
+		 * The file name of each shard, relative to the descriptor.
+		 */
+		String[] names;
+
+		/**
+		 * The length of each shard.
+		 */
+		long[] lengths;
+
+		/**
+		 * The positions in the file system of the indexes of each shard.
+		 */
+		int[][] positions;
+
+		/**
+		 * The method that reads a descriptor.
+		 * 
+		 * @param path
+		 * 		The path of the descriptor.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the descriptor cannot be read or is malformed.
+		 * 
+		 * @return The descriptor.
+		 */
+		static Descriptor read(Path path) throws IOException {
+			try(DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+
+				if (dis.readInt() != MAGIC) {
+					throw new IOException(String.format("%s is not a sharded archive.", path));
+				}
+
+				int version = dis.readUnsignedByte();
+
+				if (version != VERSION) {
+					throw new IOException(String.format("version=%d is not supported.", version));
+				}
+
+				Descriptor descriptor = new Descriptor();
+
+				descriptor.generation = dis.readLong();
+				descriptor.indexes = dis.readInt();
+
+				int shards = dis.readInt();
+
+				descriptor.names = new String[shards];
+				descriptor.lengths = new long[shards];
+				descriptor.positions = new int[shards][];
+
+				for (int shard = 0; shard < shards; shard++) {
+					descriptor.names[shard] = dis.readUTF();
+					descriptor.lengths[shard] = dis.readLong();
+					descriptor.positions[shard] = new int[dis.readInt()];
+
+					for (int index = 0; index < descriptor.positions[shard].length; index++) {
+
+						int position = dis.readInt();
+
+						if (position < 0 || position >= descriptor.indexes) {
+							throw new IOException(String.format("index=%d is out of range: %d", position, descriptor.indexes));
+						}
+
+						descriptor.positions[shard][index] = position;
+					}
+				}
+
+				return descriptor;
+			}
+		}
+
+		/**
+		 * The method that writes this descriptor, replacing the previous one atomically.
+		 * 
+		 * @param path
+		 * 		The path of the descriptor.
+		 * 
+		 * @throws IOException
+		 * 		The exception thrown if the descriptor cannot be written.
+		 */
+		void write(Path path) throws IOException {
+			Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeByte(VERSION);
+				out.writeLong(generation);
+				out.writeInt(indexes);
+				out.writeInt(names.length);
+
+				for (int shard = 0; shard < names.length; shard++) {
+					out.writeUTF(names[shard]);
+					out.writeLong(lengths[shard]);
+					out.writeInt(positions[shard].length);
+
+					for (int position : positions[shard]) {
+						out.writeInt(position);
+					}
+				}
+			}
+
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * An {@link ArchiveReader} over a sharded archive, which reads the shards one after another. Entries report the
+ * position of their index in the whole file system rather than in their shard.
+ * 
+ * @author Chad Adams
+ */
+final class ShardedArchiveReader extends ArchiveReader {
+
+	/**
+	 * The path of the descriptor.
+	 */
+	private final Path path;
+
+	/**
+	 * The descriptor of the archive.
+	 */
+	private final ShardedArchive.Descriptor descriptor;
+
+	/**
+	 * The shard being read.
+	 */
+	private int shard = -1;
+
+	/**
+	 * The reader of the shard being read, or {@code null} if no shard is being read.
+	 */
+	private BlockArchiveReader reader;
+
+	/**
+	 * Creates a new {@link ShardedArchiveReader}.
+	 * 
+	 * @param path
+	 * 		The path of the descriptor.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the descriptor cannot be read.
+	 */
+	ShardedArchiveReader(Path path) throws IOException {
+		this.path = path;
+		this.descriptor = ShardedArchive.Descriptor.read(path);
+	}
+
+	@Override
+	protected ArchiveEntry readNext() throws IOException {
+		while (true) {
+
+			if (reader != null) {
+
+				ArchiveEntry entry = reader.readNext();
+
+				if (entry != null) {
+					return new ArchiveEntry(descriptor.positions[shard][entry.getIndex()], entry.getIndexId(), entry.getIndexName(), entry.getId(), entry.getName(), entry.getLength(), entry.getInputStream());
+				}
+
+				reader.close();
+				reader = null;
+			}
+
+			if (shard + 1 >= descriptor.names.length) {
+				return null;
+			}
+
+			shard++;
+
+			reader = new BlockArchiveReader(path.resolveSibling(descriptor.names[shard]));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+	}
+
+}
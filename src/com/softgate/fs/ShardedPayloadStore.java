@@ -0,0 +1,168 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The store of a file system opened from a sharded archive. Every shard is a block archive with a
+ * {@link BlockPayloadStore} of its own, which the indexes of that shard read from directly, so shards are read through
+ * separate channels and caches. Payloads written after the archive was opened go to a single overflow store shared by
+ * every shard.
+ * 
+ * @author Chad Adams
+ */
+final class ShardedPayloadStore implements PayloadStore {
+
+	/**
+	 * The store of each shard.
+	 */
+	private final BlockPayloadStore[] shards;
+
+	/**
+	 * The store that holds payloads written after the archive was opened.
+	 */
+	private final PayloadStore overflow;
+
+	/**
+	 * Creates a new {@link ShardedPayloadStore}.
+	 * 
+	 * @param shards
+	 * 		The store of each shard.
+	 * 
+	 * @param overflow
+	 * 		The store that holds payloads written after the archive was opened.
+	 */
+	ShardedPayloadStore(BlockPayloadStore[] shards, PayloadStore overflow) {
+		this.shards = shards;
+		this.overflow = overflow;
+	}
+
+	/**
+	 * The method that wraps an overflow store so that it can be handed to every shard without being closed by each of
+	 * them.
+	 * 
+	 * @param overflow
+	 * 		The overflow store.
+	 * 
+	 * @return The wrapped store.
+	 */
+	static PayloadStore shared(PayloadStore overflow) {
+		return new PayloadStore() {
+
+			@Override
+			public long write(byte[] data) {
+				return overflow.write(data);
+			}
+
+			@Override
+			public byte[] read(long offset, int length) {
+				return overflow.read(offset, length);
+			}
+
+			@Override
+			public InputStream open(long offset, long length) throws IOException {
+				return overflow.open(offset, length);
+			}
+
+			@Override
+			public void free(long offset, long length) {
+				overflow.free(offset, length);
+			}
+
+			@Override
+			public boolean isReclaimable(long offset) {
+				return overflow.isReclaimable(offset);
+			}
+
+			@Override
+			public long size() {
+				return overflow.size();
+			}
+
+			@Override
+			public void close() {
+				// closed by the sharded store
+			}
+
+		};
+	}
+
+	@Override
+	public long write(byte[] data) {
+		return overflow.write(data);
+	}
+
+	@Override
+	public byte[] read(long offset, int length) {
+		return overflow.read(offset, length);
+	}
+
+	@Override
+	public InputStream open(long offset, long length) throws IOException {
+		return overflow.open(offset, length);
+	}
+
+	@Override
+	public void free(long offset, long length) {
+		overflow.free(offset, length);
+	}
+
+	@Override
+	public boolean isReclaimable(long offset) {
+		return overflow.isReclaimable(offset);
+	}
+
+	/**
+	 * Sets the highest amount of decompressed bytes to cache, split evenly between the shards.
+	 * 
+	 * @param cacheSize
+	 * 		The cache size in bytes, or 0 to disable caching.
+	 */
+	void setCacheSize(long cacheSize) {
+		for (BlockPayloadStore shard : shards) {
+			shard.setCacheSize(cacheSize / shards.length);
+		}
+	}
+
+	/**
+	 * Sets the listener notified of every block that is inflated.
+	 * 
+	 * @param listener
+	 * 		The listener, or {@code null} to disable instrumentation.
+	 */
+	void setListener(FileSystemListener listener) {
+		for (BlockPayloadStore shard : shards) {
+			shard.setListener(listener);
+		}
+	}
+
+	@Override
+	public long size() {
+		long size = overflow.size();
+
+		for (BlockPayloadStore shard : shards) {
+			size += shard.size() - overflow.size();
+		}
+
+		return size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+
+		for (BlockPayloadStore shard : shards) {
+			try {
+				shard.close();
+			} catch (IOException ex) {
+				failure = ex;
+			}
+		}
+
+		overflow.close();
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.softgate.fs;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Describes where the payload of an {@link IndexedFile} is stored in an archive on disk, so that it can be sent
+ * without being decompressed or copied onto the heap. The stored bytes are either the payload itself, or the payload
+ * compressed with a {@link BlockCodec} that the receiver has to decompress.
+ * 
+ * @author Chad Adams
+ */
+public final class StoredPayload {
+
+	/**
+	 * The channel of the archive.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The position of the stored bytes in the archive.
+	 */
+	private final long position;
+
+	/**
+	 * The amount of stored bytes.
+	 */
+	private final long length;
+
+	/**
+	 * The codec the stored bytes are compressed with.
+	 */
+	private final BlockCodec codec;
+
+	/**
+	 * The length of the payload once decompressed.
+	 */
+	private final long decompressedLength;
+
+	/**
+	 * Creates a new {@link StoredPayload}.
+	 * 
+	 * @param channel
+	 * 		The channel of the archive.
+	 * 
+	 * @param position
+	 * 		The position of the stored bytes in the archive.
+	 * 
+	 * @param length
+	 * 		The amount of stored bytes.
+	 * 
+	 * @param codec
+	 * 		The codec the stored bytes are compressed with.
+	 * 
+	 * @param decompressedLength
+	 * 		The length of the payload once decompressed.
+	 */
+	StoredPayload(FileChannel channel, long position, long length, BlockCodec codec, long decompressedLength) {
+		this.channel = channel;
+		this.position = position;
+		this.length = length;
+		this.codec = codec;
+		this.decompressedLength = decompressedLength;
+	}
+
+	/**
+	 * The method that transfers part of the stored bytes to a channel, which the operating system can do without
+	 * copying them through user space.
+	 * 
+	 * @param offset
+	 * 		The offset into the stored bytes to start at.
+	 * 
+	 * @param target
+	 * 		The channel to transfer to.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be read or the target cannot be written.
+	 * 
+	 * @return The amount of bytes transferred, which may be less than what is left.
+	 */
+	public long transferTo(long offset, WritableByteChannel target) throws IOException {
+		return channel.transferTo(position + offset, length - offset, target);
+	}
+
+	/**
+	 * Gets the amount of stored bytes.
+	 * 
+	 * @return The length in bytes.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the codec the stored bytes are compressed with.
+	 * 
+	 * @return The codec, {@link BlockCodec#NONE} if the stored bytes are the payload itself.
+	 */
+	public BlockCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Gets the length of the payload once decompressed.
+	 * 
+	 * @return The length in bytes.
+	 */
+	public long getDecompressedLength() {
+		return decompressedLength;
+	}
+
+}
@@ -0,0 +1,180 @@
+package com.softgate.fs;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.utils.BoundedInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * An {@link ArchiveReader} over the single compressed stream written by {@link IndexedFileSystem#encode()}.
+ * 
+ * @author Chad Adams
+ */
+final class StreamArchiveReader extends ArchiveReader {
+
+	/**
+	 * The decompressed stream of the archive.
+	 */
+	private final DataInputStream dis;
+
+	/**
+	 * The amount of indexes in the archive.
+	 */
+	private final int indexes;
+
+	/**
+	 * The id of every index whose header has been read.
+	 */
+	private final int[] indexIds;
+
+	/**
+	 * The name of every index whose header has been read.
+	 */
+	private final String[] indexNames;
+
+	/**
+	 * The amount of files of every index whose header has been read.
+	 */
+	private final int[] fileCounts;
+
+	/**
+	 * The position of the index being read.
+	 */
+	private int index = -1;
+
+	/**
+	 * The id of the index being read.
+	 */
+	private int indexId;
+
+	/**
+	 * The name of the index being read.
+	 */
+	private String indexName;
+
+	/**
+	 * The amount of files left in the index being read.
+	 */
+	private int files;
+
+	/**
+	 * The payload of the entry that was read last, or {@code null} if no entry has been read.
+	 */
+	private InputStream payload;
+
+	/**
+	 * Creates a new {@link StreamArchiveReader}.
+	 * 
+	 * @param path
+	 * 		The path of the archive.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be opened.
+	 */
+	StreamArchiveReader(Path path) throws IOException {
+		FileInputStream fis = new FileInputStream(path.toFile());
+
+		try {
+			this.dis = new DataInputStream(new XZCompressorInputStream(new BufferedInputStream(fis)));
+			this.indexes = dis.readInt();
+			this.indexIds = new int[indexes];
+			this.indexNames = new String[indexes];
+			this.fileCounts = new int[indexes];
+		} catch (IOException ex) {
+			fis.close();
+			throw ex;
+		}
+	}
+
+	@Override
+	protected ArchiveEntry readNext() throws IOException {
+
+		if (payload != null) {
+			IOUtils.skip(payload, Long.MAX_VALUE);
+			payload = null;
+		}
+
+		while (files == 0) {
+
+			if (++index >= indexes) {
+				return null;
+			}
+
+			indexId = dis.readByte();
+			indexName = dis.readUTF();
+			files = dis.readInt();
+
+			indexIds[index] = indexId;
+			indexNames[index] = indexName;
+			fileCounts[index] = files;
+		}
+
+		files--;
+
+		int id = dis.readInt();
+
+		String name = dis.readUTF();
+
+		int length = dis.readInt();
+
+		payload = new BoundedInputStream(dis, length);
+
+		return new ArchiveEntry(index, indexId, indexName, id, name, length, payload);
+	}
+
+	/**
+	 * Gets the amount of indexes in the archive, including the ones without files.
+	 * 
+	 * @return The amount of indexes.
+	 */
+	int getIndexCount() {
+		return indexes;
+	}
+
+	/**
+	 * Gets the id of an index, which is known once its header has been read.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @return The id of the index.
+	 */
+	int getIndexId(int index) {
+		return indexIds[index];
+	}
+
+	/**
+	 * Gets the name of an index, which is known once its header has been read.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @return The name of the index, or {@code null} if its header has not been read yet.
+	 */
+	String getIndexName(int index) {
+		return indexNames[index];
+	}
+
+	/**
+	 * Gets the amount of files of an index, which is known once its header has been read.
+	 * 
+	 * @param index
+	 * 		The position of the index.
+	 * 
+	 * @return The amount of files, or {@code 0} if its header has not been read yet.
+	 */
+	int getFileCount(int index) {
+		return fileCounts[index];
+	}
+
+	@Override
+	public void close() throws IOException {
+		dis.close();
+	}
+
+}
@@ -0,0 +1,312 @@
+package com.softgate.fs.server;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.PriorityQueue;
+
+import com.softgate.fs.BlockCodec;
+import com.softgate.fs.StoredPayload;
+
+/**
+ * Represents a client connected to a {@link FileServer}. Requests are queued as they arrive and answered one at a
+ * time in priority order. A connection stops reading once too many requests are queued, so a client that sends faster
+ * than it reads is slowed down by TCP instead of filling the server's memory.
+ * 
+ * <p>Every method is called on the selector thread, except {@link #loaded(FileRequest, int, byte[])}.</p>
+ * 
+ * @author Chad Adams
+ */
+final class Connection {
+
+	/**
+	 * The server this connection belongs to.
+	 */
+	private final FileServer server;
+
+	/**
+	 * The id of this connection, unique among the connections of its server.
+	 */
+	private final long id;
+
+	/**
+	 * The channel of this connection.
+	 */
+	private final SocketChannel channel;
+
+	/**
+	 * The key this connection is registered with.
+	 */
+	private final SelectionKey key;
+
+	/**
+	 * The bytes received but not yet parsed.
+	 */
+	private final ByteBuffer in = ByteBuffer.allocate(FileProtocol.REQUEST_SIZE * 64);
+
+	/**
+	 * The requests waiting to be answered.
+	 */
+	private final PriorityQueue<FileRequest> queue = new PriorityQueue<>();
+
+	/**
+	 * The header of the response being sent.
+	 */
+	private final ByteBuffer header = ByteBuffer.allocate(FileProtocol.RESPONSE_HEADER_SIZE);
+
+	/**
+	 * The payload of the response being sent, or {@code null} if it is sent from disk or has no payload.
+	 */
+	private ByteBuffer body;
+
+	/**
+	 * The payload of the response being sent from disk, or {@code null} if it is sent from memory.
+	 */
+	private StoredPayload stored;
+
+	/**
+	 * The amount of bytes of the stored payload that have been sent.
+	 */
+	private long transferred;
+
+	/**
+	 * Whether a response is being loaded or sent.
+	 */
+	private boolean responding;
+
+	/**
+	 * The amount of requests received.
+	 */
+	private long sequence;
+
+	/**
+	 * Creates a new {@link Connection}.
+	 * 
+	 * @param server
+	 * 		The server this connection belongs to.
+	 * 
+	 * @param id
+	 * 		The id of this connection, unique among the connections of its server.
+	 * 
+	 * @param channel
+	 * 		The channel of this connection.
+	 * 
+	 * @param key
+	 * 		The key this connection is registered with.
+	 */
+	Connection(FileServer server, long id, SocketChannel channel, SelectionKey key) {
+		this.server = server;
+		this.id = id;
+		this.channel = channel;
+		this.key = key;
+		this.header.limit(0);
+	}
+
+	/**
+	 * The method called when the channel has bytes to read.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the channel cannot be read.
+	 */
+	void onReadable() throws IOException {
+
+		if (channel.read(in) < 0) {
+			close();
+			return;
+		}
+
+		parse();
+		respond();
+	}
+
+	/**
+	 * The method that queues the requests that have been received, stopping once the queue is full. Requests left in
+	 * the buffer are parsed once the queue has drained.
+	 */
+	private void parse() {
+		in.flip();
+
+		while (queue.size() < server.getMaxPending() && in.remaining() >= FileProtocol.REQUEST_SIZE) {
+			int priority = Math.max(FileProtocol.PRIORITY_URGENT, Math.min(FileProtocol.PRIORITY_BACKGROUND, in.get()));
+			int flags = in.get();
+			int index = in.get() & 0xFF;
+			int file = in.getInt();
+
+			queue.add(new FileRequest(priority, flags, index, file, sequence++));
+		}
+
+		in.compact();
+
+		if (queue.size() >= server.getMaxPending()) {
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * The method called when the channel can take more bytes, or a payload has been loaded.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the channel cannot be written.
+	 */
+	void onWritable() throws IOException {
+		write();
+		respond();
+	}
+
+	/**
+	 * The method that answers queued requests until one of them cannot be answered right away.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the channel cannot be written.
+	 */
+	private void respond() throws IOException {
+		while (!responding && channel.isOpen()) {
+
+			FileRequest request = queue.poll();
+
+			if (request == null) {
+				return;
+			}
+
+			if ((key.interestOps() & SelectionKey.OP_READ) == 0 && queue.size() <= server.getMaxPending() / 2) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+				parse();
+			}
+
+			responding = true;
+
+			StoredPayload stored;
+
+			try {
+				stored = server.getFileSystem().locate(request.index, request.file);
+			} catch (RuntimeException ex) {
+				prepare(request, FileProtocol.STATUS_NOT_FOUND, BlockCodec.NONE, 0);
+				write();
+				continue;
+			}
+
+			if (stored != null && (stored.getCodec() == BlockCodec.NONE || (request.flags & FileProtocol.FLAG_ACCEPT_COMPRESSED) != 0)) {
+				prepare(request, FileProtocol.STATUS_OK, stored.getCodec(), stored.getLength());
+				this.stored = stored;
+				this.transferred = 0;
+				server.onZeroCopy();
+				write();
+				continue;
+			}
+
+			server.load(this, request);
+		}
+	}
+
+	/**
+	 * The method called on a worker thread once the payload of a request has been read.
+	 * 
+	 * @param request
+	 * 		The request.
+	 * 
+	 * @param status
+	 * 		The status of the response.
+	 * 
+	 * @param payload
+	 * 		The payload, or {@code null} if there is none.
+	 */
+	void loaded(FileRequest request, int status, byte[] payload) {
+		prepare(request, status, BlockCodec.NONE, payload == null ? 0 : payload.length);
+
+		body = payload == null ? null : ByteBuffer.wrap(payload);
+
+		server.complete(this);
+	}
+
+	/**
+	 * The method that fills in the header of the next response.
+	 * 
+	 * @param request
+	 * 		The request that is answered.
+	 * 
+	 * @param status
+	 * 		The status of the response.
+	 * 
+	 * @param codec
+	 * 		The codec the payload is compressed with.
+	 * 
+	 * @param length
+	 * 		The length of the payload.
+	 */
+	private void prepare(FileRequest request, int status, BlockCodec codec, long length) {
+		header.clear();
+		header.put((byte) request.index);
+		header.putInt(request.file);
+		header.put((byte) status);
+		header.put((byte) codec.getId());
+		header.putLong(length);
+		header.flip();
+	}
+
+	/**
+	 * The method that writes as much of the current response as the channel takes, waiting for the channel to become
+	 * writable if the response could not be written completely.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the channel cannot be written.
+	 */
+	private void write() throws IOException {
+
+		if (!responding || !channel.isOpen()) {
+			return;
+		}
+
+		while (true) {
+
+			long written;
+
+			if (header.hasRemaining()) {
+				written = channel.write(header);
+			} else if (body != null && body.hasRemaining()) {
+				written = channel.write(body);
+			} else if (stored != null && transferred < stored.getLength()) {
+				written = stored.transferTo(transferred, channel);
+				transferred += written;
+			} else {
+				break;
+			}
+
+			if (written == 0) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+		body = null;
+		stored = null;
+		responding = false;
+
+		server.onResponse();
+	}
+
+	/**
+	 * Gets the id of this connection, unique among the connections of its server.
+	 * 
+	 * @return The id.
+	 */
+	long getId() {
+		return id;
+	}
+
+	/**
+	 * The method that closes this connection, dropping every queued request.
+	 */
+	void close() {
+		queue.clear();
+		key.cancel();
+
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			// the connection is gone either way
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.softgate.fs.server;
+
+/**
+ * The wire format spoken by {@link FileServer}. A client may send any amount of requests without waiting for their
+ * responses, and the server answers the queued requests of a connection in priority order, oldest first within a
+ * priority, so responses carry the index and file they answer.
+ * 
+ * <pre>
+ * request:  byte priority, byte flags, byte index, int file
+ * response: byte index, int file, byte status, byte codec, long length, byte[length] payload
+ * </pre>
+ * 
+ * The codec is the id of the {@link com.softgate.fs.BlockCodec} the payload is compressed with, which is only ever
+ * something other than {@code NONE} if the request set {@link #FLAG_ACCEPT_COMPRESSED}.
+ * 
+ * @author Chad Adams
+ */
+public final class FileProtocol {
+
+	/**
+	 * The size of a request.
+	 */
+	public static final int REQUEST_SIZE = 7;
+
+	/**
+	 * The size of a response before its payload.
+	 */
+	public static final int RESPONSE_HEADER_SIZE = 15;
+
+	/**
+	 * The priority of a file a client is waiting for.
+	 */
+	public static final int PRIORITY_URGENT = 0;
+
+	/**
+	 * The priority of a file a client will need soon.
+	 */
+	public static final int PRIORITY_NORMAL = 1;
+
+	/**
+	 * The priority of a file a client is preloading.
+	 */
+	public static final int PRIORITY_BACKGROUND = 2;
+
+	/**
+	 * The flag that allows the server to send a payload the way it is compressed on disk.
+	 */
+	public static final int FLAG_ACCEPT_COMPRESSED = 1;
+
+	/**
+	 * The status of a response that carries the payload.
+	 */
+	public static final int STATUS_OK = 0;
+
+	/**
+	 * The status of a response to a file that does not exist.
+	 */
+	public static final int STATUS_NOT_FOUND = 1;
+
+	/**
+	 * The status of a response to a file that could not be read.
+	 */
+	public static final int STATUS_ERROR = 2;
+
+	/**
+	 * The private constructor to prevent instantiation.
+	 */
+	private FileProtocol() {
+
+	}
+
+}
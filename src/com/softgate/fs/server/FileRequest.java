@@ -0,0 +1,67 @@
+package com.softgate.fs.server;
+
+/**
+ * Represents a request for a file that is queued on a {@link Connection}. Requests are ordered by priority, then by
+ * the order they arrived in.
+ * 
+ * @author Chad Adams
+ */
+final class FileRequest implements Comparable<FileRequest> {
+
+	/**
+	 * The priority of the request, lower is more urgent.
+	 */
+	final int priority;
+
+	/**
+	 * The flags of the request.
+	 */
+	final int flags;
+
+	/**
+	 * The id of the index of the requested file.
+	 */
+	final int index;
+
+	/**
+	 * The id of the requested file.
+	 */
+	final int file;
+
+	/**
+	 * The position of the request among the requests of its connection.
+	 */
+	final long sequence;
+
+	/**
+	 * Creates a new {@link FileRequest}.
+	 * 
+	 * @param priority
+	 * 		The priority of the request.
+	 * 
+	 * @param flags
+	 * 		The flags of the request.
+	 * 
+	 * @param index
+	 * 		The id of the index of the requested file.
+	 * 
+	 * @param file
+	 * 		The id of the requested file.
+	 * 
+	 * @param sequence
+	 * 		The position of the request among the requests of its connection.
+	 */
+	FileRequest(int priority, int flags, int index, int file, long sequence) {
+		this.priority = priority;
+		this.flags = flags;
+		this.index = index;
+		this.file = file;
+		this.sequence = sequence;
+	}
+
+	@Override
+	public int compareTo(FileRequest other) {
+		return priority != other.priority ? Integer.compare(priority, other.priority) : Long.compare(sequence, other.sequence);
+	}
+
+}
@@ -0,0 +1,413 @@
+package com.softgate.fs.server;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.softgate.fs.IndexedFileSystem;
+import com.softgate.fs.ReadTraceRecorder;
+
+/**
+ * A small non-blocking server that serves the files of an {@link IndexedFileSystem} over TCP, speaking
+ * {@link FileProtocol}. A single selector thread does all socket I/O. Payloads that are stored as a single range of an
+ * archive, see {@link IndexedFileSystem#locate(int, int)}, are transferred straight from disk to the socket, and every
+ * other payload is read on a pool of worker threads so that decompression never stalls the other connections.
+ * 
+ * @author Chad Adams
+ */
+public final class FileServer implements Closeable {
+
+	/**
+	 * The default amount of requests a connection may have queued before the server stops reading from it.
+	 */
+	public static final int DEFAULT_MAX_PENDING = 256;
+
+	/**
+	 * The file system that is served.
+	 */
+	private final IndexedFileSystem fs;
+
+	/**
+	 * The selector that watches every channel.
+	 */
+	private final Selector selector;
+
+	/**
+	 * The channel that accepts connections.
+	 */
+	private final ServerSocketChannel serverChannel;
+
+	/**
+	 * The threads that read payloads that cannot be sent from disk.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * The connections whose payload has been loaded by a worker.
+	 */
+	private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The amount of requests a connection may have queued before the server stops reading from it.
+	 */
+	private final int maxPending;
+
+	/**
+	 * The thread that runs the selector.
+	 */
+	private final Thread thread;
+
+	/**
+	 * The amount of responses sent.
+	 */
+	private final LongAdder responses = new LongAdder();
+
+	/**
+	 * The amount of responses sent straight from disk.
+	 */
+	private final LongAdder zeroCopy = new LongAdder();
+
+	/**
+	 * The amount of connections accepted, only used on the selector thread.
+	 */
+	private long accepted;
+
+	/**
+	 * Whether the server is still running.
+	 */
+	private volatile boolean running = true;
+
+	/**
+	 * The private constructor.
+	 * 
+	 * @param fs
+	 * 		The file system to serve.
+	 * 
+	 * @param address
+	 * 		The address to listen on.
+	 * 
+	 * @param maxPending
+	 * 		The amount of requests a connection may have queued before the server stops reading from it.
+	 * 
+	 * @param workers
+	 * 		The amount of threads that read payloads.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the address cannot be bound.
+	 */
+	private FileServer(IndexedFileSystem fs, InetSocketAddress address, int maxPending, int workers) throws IOException {
+		this.fs = fs;
+		this.maxPending = maxPending;
+		this.selector = Selector.open();
+
+		try {
+			this.serverChannel = ServerSocketChannel.open();
+			serverChannel.configureBlocking(false);
+			serverChannel.bind(address);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException ex) {
+			selector.close();
+			throw ex;
+		}
+
+		AtomicInteger count = new AtomicInteger();
+
+		this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "ibfs-server-worker-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.thread = new Thread(this::run, "ibfs-server");
+	}
+
+	/**
+	 * The method that starts a server with {@link #DEFAULT_MAX_PENDING} and a worker per processor.
+	 * 
+	 * @param fs
+	 * 		The file system to serve.
+	 * 
+	 * @param address
+	 * 		The address to listen on.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the address cannot be bound.
+	 * 
+	 * @return The started server.
+	 */
+	public static FileServer start(IndexedFileSystem fs, InetSocketAddress address) throws IOException {
+		return start(fs, address, DEFAULT_MAX_PENDING, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * The method that starts a server.
+	 * 
+	 * @param fs
+	 * 		The file system to serve.
+	 * 
+	 * @param address
+	 * 		The address to listen on.
+	 * 
+	 * @param maxPending
+	 * 		The amount of requests a connection may have queued before the server stops reading from it.
+	 * 
+	 * @param workers
+	 * 		The amount of threads that read payloads.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the address cannot be bound.
+	 * 
+	 * @return The started server.
+	 */
+	public static FileServer start(IndexedFileSystem fs, InetSocketAddress address, int maxPending, int workers) throws IOException {
+
+		if (maxPending < 1) {
+			throw new IllegalArgumentException(String.format("maxPending=%d must be at least 1.", maxPending));
+		}
+
+		if (workers < 1) {
+			throw new IllegalArgumentException(String.format("workers=%d must be at least 1.", workers));
+		}
+
+		FileServer server = new FileServer(fs, address, maxPending, workers);
+		server.thread.start();
+		return server;
+	}
+
+	/**
+	 * The method that runs the selector until the server is closed.
+	 */
+	private void run() {
+		try {
+			while (running) {
+
+				selector.select();
+
+				Connection connection;
+
+				while ((connection = completed.poll()) != null) {
+					process(connection, false, true);
+				}
+
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+				while (iterator.hasNext()) {
+
+					SelectionKey key = iterator.next();
+
+					iterator.remove();
+
+					if (!key.isValid()) {
+						continue;
+					}
+
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						process((Connection) key.attachment(), key.isReadable(), key.isWritable());
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException ex) {
+			// the server is shutting down
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection) {
+					((Connection) key.attachment()).close();
+				}
+			}
+
+			try {
+				serverChannel.close();
+				selector.close();
+			} catch (IOException ex) {
+				// nothing is left to release
+			}
+		}
+	}
+
+	/**
+	 * The method that accepts a pending connection.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the connection cannot be registered.
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+
+		if (channel == null) {
+			return;
+		}
+
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+
+		key.attach(new Connection(this, accepted++, channel, key));
+	}
+
+	/**
+	 * The method that lets a connection handle the events it is ready for, closing it if it fails.
+	 * 
+	 * @param connection
+	 * 		The connection.
+	 * 
+	 * @param readable
+	 * 		Whether the connection has bytes to read.
+	 * 
+	 * @param writable
+	 * 		Whether the connection can take more bytes.
+	 */
+	private void process(Connection connection, boolean readable, boolean writable) {
+		try {
+			if (readable) {
+				connection.onReadable();
+			}
+
+			if (writable) {
+				connection.onWritable();
+			}
+		} catch (IOException ex) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * The method that reads the payload of a request on a worker thread.
+	 * 
+	 * @param connection
+	 * 		The connection that made the request.
+	 * 
+	 * @param request
+	 * 		The request.
+	 */
+	void load(Connection connection, FileRequest request) {
+
+		if (workers.isShutdown()) {
+			connection.close();
+			return;
+		}
+
+		workers.execute(() -> {
+
+			int status = FileProtocol.STATUS_OK;
+
+			byte[] payload = null;
+
+			// workers read for every connection, so reads are traced for the connection instead of the worker
+			ReadTraceRecorder.setSession(connection.getId());
+
+			try {
+				payload = fs.read(request.index, request.file);
+			} catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+				status = FileProtocol.STATUS_NOT_FOUND;
+			} catch (RuntimeException ex) {
+				status = FileProtocol.STATUS_ERROR;
+			} finally {
+				ReadTraceRecorder.clearSession();
+			}
+
+			connection.loaded(request, payload == null && status == FileProtocol.STATUS_OK ? FileProtocol.STATUS_NOT_FOUND : status, payload);
+		});
+	}
+
+	/**
+	 * The method that hands a connection whose payload has been loaded back to the selector thread.
+	 * 
+	 * @param connection
+	 * 		The connection.
+	 */
+	void complete(Connection connection) {
+		completed.add(connection);
+		selector.wakeup();
+	}
+
+	/**
+	 * The method called after a response has been sent.
+	 */
+	void onResponse() {
+		responses.increment();
+	}
+
+	/**
+	 * The method called when a response is sent straight from disk.
+	 */
+	void onZeroCopy() {
+		zeroCopy.increment();
+	}
+
+	/**
+	 * Gets the file system that is served.
+	 * 
+	 * @return The file system.
+	 */
+	IndexedFileSystem getFileSystem() {
+		return fs;
+	}
+
+	/**
+	 * Gets the amount of requests a connection may have queued before the server stops reading from it.
+	 * 
+	 * @return The amount of requests.
+	 */
+	int getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * Gets the address the server is listening on.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the server has been closed.
+	 * 
+	 * @return The address.
+	 */
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * Gets the amount of responses sent.
+	 * 
+	 * @return The amount of responses.
+	 */
+	public long getResponses() {
+		return responses.sum();
+	}
+
+	/**
+	 * Gets the amount of responses that were sent straight from disk.
+	 * 
+	 * @return The amount of responses.
+	 */
+	public long getZeroCopyResponses() {
+		return zeroCopy.sum();
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		selector.wakeup();
+		workers.shutdownNow();
+
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
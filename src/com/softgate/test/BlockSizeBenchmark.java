@@ -0,0 +1,146 @@
+package com.softgate.test;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.softgate.fs.FileSystemMetrics;
+import com.softgate.fs.Index;
+import com.softgate.fs.IndexedFileSystem;
+
+/**
+ * Sweeps the block size of a block archive and reports the compression ratio against the read latency, so the block
+ * size can be tuned per deployment.
+ * 
+ * <pre>
+ * java com.softgate.test.BlockSizeBenchmark [archive] [reads] [cache size]
+ * </pre>
+ * 
+ * Without an archive a synthetic file system is generated. The block cache defaults to an eighth of the decompressed
+ * archive, so reads keep missing it as they would on a cache that does not fit in memory.
+ * 
+ * @author Chad Adams
+ */
+public class BlockSizeBenchmark {
+
+	/**
+	 * The block sizes to sweep, each four times the previous one.
+	 */
+	private static final int[] BLOCK_SIZES = { 64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024 };
+
+	/**
+	 * The default amount of reads per block size. Most reads miss the cache and inflate a whole block, so this is kept
+	 * small enough for the largest block size to finish quickly.
+	 */
+	private static final int DEFAULT_READS = 200;
+
+	public static void main(String[] args) throws IOException {
+		int reads = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_READS;
+
+		try(IndexedFileSystem fs = args.length > 0 ? IndexedFileSystem.decode(args[0]) : generate()) {
+
+			long uncompressed = 0;
+
+			for (Index index : fs.getIndexes()) {
+				for (int file = 0; file < index.getFiles().size(); file++) {
+					uncompressed += index.getFiles().get(file).getLength();
+				}
+			}
+
+			long cacheSize = args.length > 2 ? Long.parseLong(args[2]) : uncompressed / 8;
+
+			File solid = File.createTempFile("ibfs-solid", ".dat");
+
+			solid.deleteOnExit();
+
+			fs.write(solid);
+
+			System.out.println(String.format("files=%d uncompressed=%d solid ratio=%.2f reads=%d cache=%d", count(fs), uncompressed, (double) uncompressed / solid.length(), reads, cacheSize));
+			System.out.println(String.format("%10s %12s %8s %10s %10s %10s %8s", "block", "size", "ratio", "p50 (us)", "p99 (us)", "max (us)", "hits"));
+
+			for (int blockSize : BLOCK_SIZES) {
+
+				File file = File.createTempFile("ibfs-block", ".dat");
+
+				file.deleteOnExit();
+
+				fs.write(file, blockSize);
+
+				FileSystemMetrics metrics = new FileSystemMetrics();
+
+				try(IndexedFileSystem blocks = IndexedFileSystem.decode(file.getPath())) {
+
+					blocks.setBlockCacheSize(cacheSize);
+
+					Random random = new Random(blockSize);
+
+					for (int i = 0; i < reads; i++) {
+
+						if (i == reads / 10) {
+							blocks.setListener(metrics);
+						}
+
+						int index = random.nextInt(blocks.getIndexes().size());
+
+						int files = blocks.getIndex(index).getFiles().size();
+
+						if (files > 0) {
+							blocks.read(index, random.nextInt(files));
+						}
+					}
+				}
+
+				System.out.println(String.format("%10d %12d %8.2f %10d %10d %10d %7.1f%%", blockSize, file.length(), (double) uncompressed / file.length(),
+						metrics.getReadLatency().getPercentile(50, TimeUnit.MICROSECONDS), metrics.getReadLatency().getPercentile(99, TimeUnit.MICROSECONDS),
+						metrics.getReadLatency().getMax(TimeUnit.MICROSECONDS), metrics.getCacheHitRate() * 100));
+
+				file.delete();
+			}
+
+			solid.delete();
+		}
+	}
+
+	/**
+	 * The method that counts the files in a file system.
+	 * 
+	 * @param fs
+	 * 		The file system.
+	 * 
+	 * @return The amount of files.
+	 */
+	private static int count(IndexedFileSystem fs) {
+		return fs.getIndexes().stream().mapToInt(it -> it.getFiles().size()).sum();
+	}
+
+	/**
+	 * The method that generates a file system of semi-compressible files.
+	 * 
+	 * @return The generated file system.
+	 */
+	static IndexedFileSystem generate() {
+
+		IndexedFileSystem fs = IndexedFileSystem.create();
+
+		Random random = new Random(0);
+
+		for (int id = 0; id < 5; id++) {
+
+			Index index = fs.add(Index.create(id, "index" + id));
+
+			for (int file = 0; file < 200; file++) {
+
+				byte[] data = new byte[1024 + random.nextInt(16 * 1024)];
+
+				for (int i = 0; i < data.length; i++) {
+					data[i] = (byte) (i % 64 < 48 ? (file + i / 64) & 0x1F : random.nextInt(256));
+				}
+
+				index.add(file + ".dat", data);
+			}
+		}
+
+		return fs;
+	}
+
+}
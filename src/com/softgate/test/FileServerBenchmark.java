@@ -0,0 +1,303 @@
+package com.softgate.test;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.softgate.fs.AccessLayout;
+import com.softgate.fs.BlockCodec;
+import com.softgate.fs.IndexedFileSystem;
+import com.softgate.fs.LatencyHistogram;
+import com.softgate.fs.server.FileProtocol;
+import com.softgate.fs.server.FileServer;
+
+/**
+ * Generates load against a {@link FileServer} over loopback and reports its throughput and the latency of each
+ * priority. Every connection keeps a fixed amount of pipelined requests in flight, 10% of them urgent, 70% normal and
+ * 20% background.
+ * 
+ * <pre>
+ * java com.softgate.test.FileServerBenchmark [archive|-] [connections] [requests per connection] [pipeline depth]
+ * </pre>
+ * 
+ * Without an archive a synthetic file system is written three ways and each is served in turn: as XZ blocks that the
+ * server decompresses, as one XZ block per file that is sent precompressed, and uncompressed so that it is sent with
+ * zero copies.
+ * 
+ * @author Chad Adams
+ */
+public class FileServerBenchmark {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int requests = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+		int depth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+		System.out.println(String.format("connections=%d requests=%d depth=%d", connections, requests, depth));
+		System.out.println(String.format("%-20s %10s %10s %14s %14s %14s %10s", "archive", "req/s", "MB/s", "urgent p50/p99", "normal p50/p99", "bg p50/p99", "zero-copy"));
+
+		if (args.length > 0 && !args[0].equals("-")) {
+			run(args[0], args[0], connections, requests, depth, FileProtocol.FLAG_ACCEPT_COMPRESSED);
+			return;
+		}
+
+		try(IndexedFileSystem fs = BlockSizeBenchmark.generate()) {
+
+			File blocks = File.createTempFile("ibfs-blocks", ".dat");
+			File perFile = File.createTempFile("ibfs-per-file", ".dat");
+			File raw = File.createTempFile("ibfs-raw", ".dat");
+
+			blocks.deleteOnExit();
+			perFile.deleteOnExit();
+			raw.deleteOnExit();
+
+			fs.write(blocks, 64 * 1024);
+			fs.write(perFile, AccessLayout.natural(fs, 1));
+			fs.write(raw, AccessLayout.natural(fs, 64 * 1024), BlockCodec.NONE);
+
+			run("xz blocks", blocks.getPath(), connections, requests, depth, 0);
+			run("xz precompressed", perFile.getPath(), connections, requests, depth, FileProtocol.FLAG_ACCEPT_COMPRESSED);
+			run("uncompressed", raw.getPath(), connections, requests, depth, 0);
+
+			blocks.delete();
+			perFile.delete();
+			raw.delete();
+		}
+	}
+
+	/**
+	 * The method that serves an archive and measures it under load.
+	 * 
+	 * @param label
+	 * 		The label to report the archive as.
+	 * 
+	 * @param path
+	 * 		The path of the archive.
+	 * 
+	 * @param connections
+	 * 		The amount of connections.
+	 * 
+	 * @param requests
+	 * 		The amount of requests per connection.
+	 * 
+	 * @param depth
+	 * 		The amount of requests every connection keeps in flight.
+	 * 
+	 * @param flags
+	 * 		The flags to send with every request.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the archive cannot be served.
+	 * 
+	 * @throws InterruptedException
+	 * 		The exception thrown if the benchmark is interrupted.
+	 */
+	private static void run(String label, String path, int connections, int requests, int depth, int flags) throws IOException, InterruptedException {
+		try(IndexedFileSystem fs = IndexedFileSystem.decode(path); FileServer server = FileServer.start(fs, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+
+			int[] files = fs.getIndexes().stream().mapToInt(it -> it.getFiles().size()).toArray();
+
+			LatencyHistogram[] latencies = { new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram() };
+
+			LongAdder bytes = new LongAdder();
+
+			InetSocketAddress address = server.getAddress();
+
+			Thread[] clients = new Thread[connections];
+
+			for (int i = 0; i < clients.length; i++) {
+
+				long seed = i;
+
+				clients[i] = new Thread(() -> {
+					try {
+						client(address, files, requests, depth, flags, seed, latencies, bytes);
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				}, "ibfs-load-" + i);
+			}
+
+			long start = System.nanoTime();
+
+			for (Thread client : clients) {
+				client.start();
+			}
+
+			for (Thread client : clients) {
+				client.join();
+			}
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			long total = (long) connections * requests;
+
+			System.out.println(String.format("%-20s %10.0f %10.1f %14s %14s %14s %9.0f%%", label, total / seconds, bytes.sum() / seconds / (1024 * 1024),
+					percentiles(latencies[FileProtocol.PRIORITY_URGENT]), percentiles(latencies[FileProtocol.PRIORITY_NORMAL]), percentiles(latencies[FileProtocol.PRIORITY_BACKGROUND]),
+					server.getZeroCopyResponses() * 100.0 / Math.max(1, server.getResponses())));
+		}
+	}
+
+	/**
+	 * The method that runs a single connection until all of its requests have been answered.
+	 * 
+	 * @param address
+	 * 		The address of the server.
+	 * 
+	 * @param files
+	 * 		The amount of files in each index.
+	 * 
+	 * @param requests
+	 * 		The amount of requests to make.
+	 * 
+	 * @param depth
+	 * 		The amount of requests to keep in flight.
+	 * 
+	 * @param flags
+	 * 		The flags to send with every request.
+	 * 
+	 * @param seed
+	 * 		The seed of the requested files.
+	 * 
+	 * @param latencies
+	 * 		The latencies of each priority.
+	 * 
+	 * @param bytes
+	 * 		The amount of bytes received.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the connection fails.
+	 */
+	private static void client(InetSocketAddress address, int[] files, int requests, int depth, int flags, long seed, LatencyHistogram[] latencies, LongAdder bytes) throws IOException {
+		try(SocketChannel channel = SocketChannel.open(address)) {
+
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+			Random random = new Random(seed);
+
+			Map<Long, ArrayDeque<long[]>> outstanding = new HashMap<>();
+
+			ByteBuffer request = ByteBuffer.allocate(FileProtocol.REQUEST_SIZE * depth);
+
+			ByteBuffer header = ByteBuffer.allocate(FileProtocol.RESPONSE_HEADER_SIZE);
+
+			ByteBuffer payload = ByteBuffer.allocate(64 * 1024);
+
+			int sent = 0;
+
+			int inFlight = 0;
+
+			for (int received = 0; received < requests; received++) {
+
+				request.clear();
+
+				long now = System.nanoTime();
+
+				while (inFlight < depth && sent < requests) {
+
+					int index = random.nextInt(files.length);
+
+					if (files[index] == 0) {
+						continue;
+					}
+
+					int file = random.nextInt(files[index]);
+
+					int roll = random.nextInt(10);
+
+					int priority = roll == 0 ? FileProtocol.PRIORITY_URGENT : roll < 8 ? FileProtocol.PRIORITY_NORMAL : FileProtocol.PRIORITY_BACKGROUND;
+
+					request.put((byte) priority).put((byte) flags).put((byte) index).putInt(file);
+
+					outstanding.computeIfAbsent(AccessLayout.key(index, file), key -> new ArrayDeque<>()).add(new long[] { now, priority });
+
+					sent++;
+					inFlight++;
+				}
+
+				request.flip();
+
+				while (request.hasRemaining()) {
+					channel.write(request);
+				}
+
+				header.clear();
+
+				readFully(channel, header);
+
+				header.flip();
+
+				int index = header.get() & 0xFF;
+				int file = header.getInt();
+				int status = header.get();
+
+				header.get();
+
+				long length = header.getLong();
+
+				if (status != FileProtocol.STATUS_OK) {
+					throw new IOException(String.format("file=[%d, %d] failed with status=%d", index, file, status));
+				}
+
+				for (long remaining = length; remaining > 0; ) {
+					payload.clear();
+					payload.limit((int) Math.min(payload.capacity(), remaining));
+					readFully(channel, payload);
+					remaining -= payload.position();
+				}
+
+				long[] entry = outstanding.get(AccessLayout.key(index, file)).poll();
+
+				latencies[(int) entry[1]].record(System.nanoTime() - entry[0]);
+
+				bytes.add(FileProtocol.RESPONSE_HEADER_SIZE + length);
+
+				inFlight--;
+			}
+		}
+	}
+
+	/**
+	 * The method that reads from a channel until a buffer is full.
+	 * 
+	 * @param channel
+	 * 		The channel to read from.
+	 * 
+	 * @param buffer
+	 * 		The buffer to fill.
+	 * 
+	 * @throws IOException
+	 * 		The exception thrown if the channel ends first.
+	 */
+	private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("the server closed the connection.");
+			}
+		}
+	}
+
+	/**
+	 * The method that formats the median and 99th percentile of a histogram in microseconds.
+	 * 
+	 * @param histogram
+	 * 		The histogram.
+	 * 
+	 * @return The formatted percentiles.
+	 */
+	private static String percentiles(LatencyHistogram histogram) {
+		return String.format("%d/%d", histogram.getPercentile(50, TimeUnit.MICROSECONDS), histogram.getPercentile(99, TimeUnit.MICROSECONDS));
+	}
+
+}
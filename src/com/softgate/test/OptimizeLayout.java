@@ -0,0 +1,43 @@
+package com.softgate.test;
+import java.io.File;
+import java.io.IOException;
+
+import com.softgate.fs.AccessLayout;
+import com.softgate.fs.IndexedFileSystem;
+import com.softgate.fs.LayoutOptimizer;
+
+/**
+ * Rewrites an archive so that co-accessed files are contiguous, and reports how many blocks a burst of reads inflates
+ * before and after.
+ * 
+ * <pre>
+ * java com.softgate.test.OptimizeLayout &lt;archive&gt; &lt;trace&gt; &lt;output&gt;
+ * </pre>
+ * 
+ * @author Chad Adams
+ */
+public class OptimizeLayout {
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 3) {
+			System.out.println("usage: OptimizeLayout <archive> <trace> <output>");
+			return;
+		}
+
+		LayoutOptimizer optimizer = new LayoutOptimizer();
+
+		File trace = new File(args[1]);
+
+		try(IndexedFileSystem fs = IndexedFileSystem.decode(args[0])) {
+
+			AccessLayout layout = optimizer.optimize(fs, trace);
+
+			fs.write(new File(args[2]), layout);
+
+			System.out.println(String.format("clusters=%d blocks per burst: natural=%.2f optimized=%.2f", layout.getClusters().size(),
+					optimizer.blocksPerBurst(fs, trace, AccessLayout.natural(fs, LayoutOptimizer.DEFAULT_CLUSTER_SIZE)), optimizer.blocksPerBurst(fs, trace, layout)));
+		}
+	}
+
+}
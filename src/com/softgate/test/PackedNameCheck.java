@@ -0,0 +1,79 @@
+package com.softgate.test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.softgate.fs.HeapPayloadStore;
+import com.softgate.fs.Index;
+import com.softgate.fs.IndexedFile;
+import com.softgate.fs.IndexedFileHeader;
+
+/**
+ * Checks that the names of a packed index survive files being removed and inserted in the middle of it. Removals leave
+ * dead names in the name blob, so the inserts keep compacting it while the files after the inserted one are shifted.
+ * 
+ * <pre>
+ * java com.softgate.test.PackedNameCheck [rounds]
+ * </pre>
+ * 
+ * @author Chad Adams
+ */
+public class PackedNameCheck {
+
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+		Random random = new Random(1);
+
+		Index index = Index.create(0, "names", new HeapPayloadStore());
+
+		List<String> expected = new ArrayList<>();
+
+		for (int round = 0; round < rounds; round++) {
+
+			if (!expected.isEmpty() && random.nextInt(3) == 0) {
+				int slot = random.nextInt(expected.size());
+				index.getFiles().remove(slot);
+				expected.remove(slot);
+			} else {
+				int slot = random.nextInt(expected.size() + 1);
+				String name = String.format("file-%06d", round);
+				index.getFiles().add(slot, new IndexedFile(new IndexedFileHeader(round, name), new byte[0]));
+				expected.add(slot, name);
+			}
+
+			check(index, expected, round);
+		}
+
+		System.out.println(String.format("%d rounds passed, %d files", rounds, expected.size()));
+	}
+
+	/**
+	 * The method that checks the name of every file of an index against the expected names.
+	 * 
+	 * @param index
+	 * 		The index to check.
+	 * 
+	 * @param expected
+	 * 		The expected names, in slot order.
+	 * 
+	 * @param round
+	 * 		The round being checked.
+	 */
+	private static void check(Index index, List<String> expected, int round) {
+		List<IndexedFile> files = index.getFiles();
+
+		if (files.size() != expected.size()) {
+			throw new IllegalStateException(String.format("round=%d size=%d expected=%d", round, files.size(), expected.size()));
+		}
+
+		for (int slot = 0; slot < expected.size(); slot++) {
+			String name = files.get(slot).getHeader().getName();
+
+			if (!expected.get(slot).equals(name)) {
+				throw new IllegalStateException(String.format("round=%d slot=%d name=%s expected=%s", round, slot, name, expected.get(slot)));
+			}
+		}
+	}
+
+}
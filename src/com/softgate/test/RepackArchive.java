@@ -0,0 +1,39 @@
+package com.softgate.test;
+import java.io.File;
+import java.io.IOException;
+
+import com.softgate.fs.BlockCodec;
+import com.softgate.fs.LayoutOptimizer;
+import com.softgate.fs.Repacker;
+
+/**
+ * Repacks an archive with another codec or compression preset and prints the ratio and compression time of every
+ * index.
+ * 
+ * <pre>
+ * java com.softgate.test.RepackArchive &lt;source&gt; &lt;target&gt; &lt;NONE|XZ&gt; [preset] [blockSize] [threads]
+ * </pre>
+ * 
+ * @author Chad Adams
+ */
+public class RepackArchive {
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 3 || args.length > 6) {
+			System.out.println("usage: RepackArchive <source> <target> <NONE|XZ> [preset] [blockSize] [threads]");
+			return;
+		}
+
+		BlockCodec codec = BlockCodec.valueOf(args[2].toUpperCase());
+
+		int preset = args.length > 3 ? Integer.parseInt(args[3]) : Repacker.KEEP_PRESET;
+
+		int blockSize = args.length > 4 ? Integer.parseInt(args[4]) : LayoutOptimizer.DEFAULT_CLUSTER_SIZE;
+
+		int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+		System.out.println(Repacker.create(codec, preset, blockSize, threads).repack(args[0], new File(args[1])));
+	}
+
+}